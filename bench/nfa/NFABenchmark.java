@@ -0,0 +1,172 @@
+package bench.nfa;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+/**
+ * JMH benchmarks for building and simulating NFAs. Each benchmark runs over
+ * random automata of several sizes and degrees of nondeterminism (the number
+ * of targets per state and symbol) and, for matching, several input lengths.
+ *
+ * Run from the project root, optionally passing JMH options such as a
+ * benchmark name filter:
+ * <pre>
+ * gradle jmh
+ * gradle jmh -PjmhArgs='accepts -p size=256'
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NFABenchmark {
+    private static final char[] SIGMA = {'a', 'b', 'c', 'd'};
+
+    /**
+     * A random automaton of a given size and degree.
+     */
+    @State(Scope.Benchmark)
+    public static class Automaton {
+        @Param({"16", "256", "4096"})
+        public int size;
+
+        @Param({"1", "2", "4"})
+        public int degree;
+
+        NFA nfa;
+        NFA copy;
+        NFAState[] states;
+
+        @Setup
+        public void setUp() {
+            nfa = randomNFA(size, degree, 42);
+            copy = randomNFA(size, degree, 42);
+            states = new NFAState[size];
+            for (int i = 0; i < size; i++) {
+                states[i] = nfa.getState("q" + i);
+            }
+        }
+    }
+
+    /**
+     * A random input of a given length.
+     */
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({"64", "1024"})
+        public int length;
+
+        String input;
+
+        @Setup
+        public void setUp() {
+            input = randomInput(length, 7);
+        }
+    }
+
+    /**
+     * The state whose closure is taken next, cycling through all states.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public NFA construct(Automaton automaton) {
+        return randomNFA(automaton.size, automaton.degree, 42);
+    }
+
+    @Benchmark
+    public Set<NFAState> eClosure(Automaton automaton, Cursor cursor) {
+        cursor.next = (cursor.next + 1) % automaton.size;
+        return automaton.nfa.eClosure(automaton.states[cursor.next]);
+    }
+
+    @Benchmark
+    public boolean isSubsetOf(Automaton automaton) {
+        return automaton.nfa.isSubsetOf(automaton.copy);
+    }
+
+    @Benchmark
+    public boolean accepts(Automaton automaton, Input input) {
+        return automaton.nfa.accepts(input.input);
+    }
+
+    @Benchmark
+    public int maxCopies(Automaton automaton, Input input) {
+        return automaton.nfa.maxCopies(input.input);
+    }
+
+    /**
+     * Builds a random NFA through addState and addTransition. Every state
+     * gets degree targets on each symbol and, at a quarter of the states, an
+     * epsilon transition; every eighth state is final.
+     *
+     * @param size the number of states
+     * @param degree the number of targets per state and symbol
+     * @param seed the random seed
+     * @return the new NFA
+     */
+    static NFA randomNFA(int size, int degree, long seed) {
+        Random random = new Random(seed);
+        NFA nfa = new NFA();
+        for (char symbol : SIGMA) {
+            nfa.addSigma(symbol);
+        }
+        for (int i = 0; i < size; i++) {
+            nfa.addState("q" + i);
+            if (i % 8 == 7) {
+                nfa.setFinal("q" + i);
+            }
+        }
+        nfa.setStart("q0");
+        for (int i = 0; i < size; i++) {
+            for (char symbol : SIGMA) {
+                String[] targets = new String[degree];
+                for (int k = 0; k < degree; k++) {
+                    targets[k] = "q" + random.nextInt(size);
+                }
+                nfa.addTransition("q" + i, Set.of(Arrays.stream(targets).distinct().toArray(String[]::new)), symbol);
+            }
+            if (random.nextInt(4) == 0) {
+                nfa.addTransition("q" + i, Set.of("q" + random.nextInt(size)), 'e');
+            }
+        }
+        return nfa;
+    }
+
+    /**
+     * Generates a random input over the benchmark alphabet.
+     *
+     * @param length the number of characters
+     * @param seed the random seed
+     * @return the input
+     */
+    static String randomInput(int length, long seed) {
+        Random random = new Random(seed);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = SIGMA[random.nextInt(SIGMA.length)];
+        }
+        return new String(chars);
+    }
+}
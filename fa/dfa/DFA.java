@@ -0,0 +1,562 @@
+package fa.dfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fa.FAInterface;
+
+/**
+ * This class represents a Deterministic Finite Automaton or DFA. The transition
+ * function is stored as a single primitive table indexed by
+ * {@code state * |sigma| + symbol}, so that accepts runs without allocating
+ * and with one array lookup per input character. A missing transition is
+ * stored as -1 and rejects the input.
+ *
+ * A range of symbols can be added to the alphabet as one class that shares
+ * a single column, so a wide range such as every char costs one column
+ * rather than one per symbol, and a transition on any symbol of the class
+ * is a transition on all of them.
+ */
+public class DFA implements FAInterface {
+    private static final int DIRECT_SIZE = 128;
+
+    private final Map<String, DFAState> states;
+    private final List<DFAState> byId;
+    private DFAState startState;
+
+    // The symbols of column c are classLow[c] to classHigh[c], in the order added
+    private char[] classLow;
+    private char[] classHigh;
+    private int columnCount;
+
+    // Column lookup: ASCII symbols through direct, the rest by binary search
+    // over the classes sorted by their first symbol
+    private final int[] direct;
+    private char[] sortedLow;
+    private char[] sortedHigh;
+    private int[] sortedColumns;
+
+    private int[] delta;
+    private boolean[] finals;
+
+    /**
+     * Constructs an empty DFA with no states, symbols, or final states.
+     */
+    public DFA() {
+        states = new HashMap<>();
+        byId = new ArrayList<>();
+        classLow = new char[0];
+        classHigh = new char[0];
+        direct = new int[DIRECT_SIZE];
+        Arrays.fill(direct, -1);
+        sortedLow = new char[0];
+        sortedHigh = new char[0];
+        sortedColumns = new int[0];
+        delta = new int[0];
+        finals = new boolean[0];
+    }
+
+    /**
+     * Adds a new state to the DFA.
+     *
+     * @param name the name of the state to add
+     * @return true if the state was added successfully and false if it already exists
+     */
+    @Override
+    public boolean addState(String name) {
+        if (states.containsKey(name)) {
+            return false;
+        }
+        DFAState state = new DFAState(name, byId.size());
+        states.put(name, state);
+        byId.add(state);
+
+        // Grows the table by whole rows, doubling the capacity
+        if (byId.size() > finals.length) {
+            int capacity = Math.max(4, finals.length * 2);
+            int oldLength = delta.length;
+            delta = Arrays.copyOf(delta, capacity * columnCount);
+            Arrays.fill(delta, oldLength, delta.length, -1);
+            finals = Arrays.copyOf(finals, capacity);
+        }
+        return true;
+    }
+
+    /**
+     * Sets a specified state as a final state.
+     *
+     * @param name the name of the state
+     * @return true if the state was found and set as final, false otherwise
+     */
+    @Override
+    public boolean setFinal(String name) {
+        DFAState state = states.get(name);
+        if (state == null) {
+            return false;
+        }
+        state.setFinal(true);
+        finals[state.getId()] = true;
+        return true;
+    }
+
+    /**
+     * Sets the state as the start state.
+     *
+     * @param name the name of the state
+     * @return true if the start state was set successfully, false otherwise
+     */
+    @Override
+    public boolean setStart(String name) {
+        DFAState state = states.get(name);
+        if (state == null) {
+            return false;
+        }
+        startState = state;
+        return true;
+    }
+
+    /**
+     * Adds a symbol to the DFA's alphabet. The delta table gets a new column,
+     * so every row is moved once.
+     *
+     * @param symbol the symbol to add
+     */
+    @Override
+    public void addSigma(char symbol) {
+        if (columnOf(symbol) < 0) {
+            addColumn(symbol, symbol);
+        }
+    }
+
+    /**
+     * Adds every symbol from low to high, inclusive, to the alphabet as one
+     * class with a single column, so the symbols always share their
+     * transitions. None of them may be in the alphabet already.
+     *
+     * @param low the first symbol of the class
+     * @param high the last symbol of the class
+     * @return true if the class was added, false if the range is empty or
+     *         overlaps the alphabet
+     */
+    public boolean addSigma(char low, char high) {
+        if (low > high || overlaps(low, high)) {
+            return false;
+        }
+        addColumn(low, high);
+        return true;
+    }
+
+    /**
+     * Checks if any symbol from low to high is in the alphabet.
+     */
+    private boolean overlaps(char low, char high) {
+        for (int c = low; c <= Math.min(high, DIRECT_SIZE - 1); c++) {
+            if (direct[c] >= 0) {
+                return true;
+            }
+        }
+        // The last class starting at or before high is the only one that can reach low
+        int i = Arrays.binarySearch(sortedLow, high);
+        i = i < 0 ? -i - 2 : i;
+        return i >= 0 && sortedHigh[i] >= low;
+    }
+
+    /**
+     * Adds a column for a class of symbols not yet in the alphabet, moving
+     * every row of the delta table once.
+     */
+    private void addColumn(char low, char high) {
+        int oldColumns = columnCount;
+        int rows = finals.length;
+        columnCount++;
+
+        int[] grown = new int[rows * columnCount];
+        Arrays.fill(grown, -1);
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(delta, row * oldColumns, grown, row * columnCount, oldColumns);
+        }
+        delta = grown;
+        classLow = Arrays.copyOf(classLow, columnCount);
+        classHigh = Arrays.copyOf(classHigh, columnCount);
+        classLow[oldColumns] = low;
+        classHigh[oldColumns] = high;
+
+        for (int c = low; c <= Math.min(high, DIRECT_SIZE - 1); c++) {
+            direct[c] = oldColumns;
+        }
+        if (high >= DIRECT_SIZE) {
+            char from = (char) Math.max(low, DIRECT_SIZE);
+            int i = -Arrays.binarySearch(sortedLow, from) - 1;
+            int length = sortedLow.length;
+            char[] newLow = new char[length + 1];
+            char[] newHigh = new char[length + 1];
+            int[] newColumns = new int[length + 1];
+            System.arraycopy(sortedLow, 0, newLow, 0, i);
+            System.arraycopy(sortedHigh, 0, newHigh, 0, i);
+            System.arraycopy(sortedColumns, 0, newColumns, 0, i);
+            newLow[i] = from;
+            newHigh[i] = high;
+            newColumns[i] = oldColumns;
+            System.arraycopy(sortedLow, i, newLow, i + 1, length - i);
+            System.arraycopy(sortedHigh, i, newHigh, i + 1, length - i);
+            System.arraycopy(sortedColumns, i, newColumns, i + 1, length - i);
+            sortedLow = newLow;
+            sortedHigh = newHigh;
+            sortedColumns = newColumns;
+        }
+    }
+
+    /**
+     * Adds a transition, replacing any earlier transition from the same state
+     * on the same symbol. For a symbol added as part of a class, the
+     * transition is on every symbol of the class.
+     *
+     * @param fromState the name of the state from which the transition originates
+     * @param toState the name of the state to which the transition goes
+     * @param onSymb the symbol on which the transition occurs
+     * @return true if successful and false if one of the states doesn't exist or the symbol is not in the alphabet
+     */
+    public boolean addTransition(String fromState, String toState, char onSymb) {
+        DFAState from = states.get(fromState);
+        DFAState to = states.get(toState);
+        int column = columnOf(onSymb);
+        if (from == null || to == null || column < 0) {
+            return false;
+        }
+        delta[from.getId() * columnCount + column] = to.getId();
+        return true;
+    }
+
+    /**
+     * Returns the state reached from a state on a symbol.
+     *
+     * @param from the source state
+     * @param onSymb the symbol on which to transition
+     * @return the target state, or null if there is no such transition
+     */
+    public DFAState getToState(DFAState from, char onSymb) {
+        int column = columnOf(onSymb);
+        if (column < 0) {
+            return null;
+        }
+        int to = delta[from.getId() * columnCount + column];
+        return to < 0 ? null : byId.get(to);
+    }
+
+    /**
+     * Checks if the DFA accepts a string.
+     *
+     * @param s the input string to check
+     * @return true if the input string is accepted by the DFA, false otherwise
+     */
+    @Override
+    public boolean accepts(String s) {
+        if (startState == null) {
+            return false;
+        }
+        int[] delta = this.delta;
+        int columns = columnCount;
+        int state = startState.getId();
+        for (int i = 0; i < s.length(); i++) {
+            int column = columnOf(s.charAt(i));
+            if (column < 0) {
+                return false;
+            }
+            state = delta[state * columns + column];
+            if (state < 0) {
+                return false;
+            }
+        }
+        return finals[state];
+    }
+
+    /**
+     * Builds the smallest DFA accepting the same language, using Hopcroft's
+     * partition refinement in O(n |sigma| log n) time. Unreachable states are
+     * dropped first and missing transitions are treated as going to an
+     * implicit dead state; states equivalent to that dead state are left out
+     * of the result, so missing transitions still reject. Each state of the
+     * result is named after the first of its merged states in breadth-first
+     * order from the start state.
+     *
+     * @return a new minimal DFA
+     */
+    public DFA minimize() {
+        DFA min = new DFA();
+        for (int c = 0; c < columnCount; c++) {
+            min.addColumn(classLow[c], classHigh[c]);
+        }
+        if (startState == null) {
+            return min;
+        }
+        int k = columnCount;
+
+        // Numbers the reachable states in breadth-first order; the dead state is n
+        int[] reach = new int[byId.size()];
+        Arrays.fill(reach, -1);
+        int[] order = new int[byId.size()];
+        int n = 0;
+        order[n] = startState.getId();
+        reach[order[n++]] = 0;
+        for (int head = 0; head < n; head++) {
+            for (int c = 0; c < k; c++) {
+                int to = delta[order[head] * k + c];
+                if (to >= 0 && reach[to] < 0) {
+                    reach[to] = n;
+                    order[n++] = to;
+                }
+            }
+        }
+        int dead = n;
+        int total = n + 1;
+        int[] next = new int[total * k];
+        for (int q = 0; q < n; q++) {
+            for (int c = 0; c < k; c++) {
+                int to = delta[order[q] * k + c];
+                next[q * k + c] = to < 0 ? dead : reach[to];
+            }
+        }
+        Arrays.fill(next, dead * k, total * k, dead);
+
+        // Predecessors of every state on every column, grouped by (state, column)
+        int[] preIndex = new int[total * k + 1];
+        for (int i = 0; i < total * k; i++) {
+            preIndex[next[i] * k + i % k + 1]++;
+        }
+        for (int i = 0; i < total * k; i++) {
+            preIndex[i + 1] += preIndex[i];
+        }
+        int[] pre = new int[total * k];
+        int[] fill = Arrays.copyOf(preIndex, total * k);
+        for (int i = 0; i < total * k; i++) {
+            pre[fill[next[i] * k + i % k]++] = i / k;
+        }
+
+        // The partition: the states of block b are elems[first[b]] up to elems[end[b]]
+        int[] elems = new int[total];
+        int[] loc = new int[total];
+        int[] blockOf = new int[total];
+        int[] first = new int[total];
+        int[] end = new int[total];
+        int[] marked = new int[total];
+        int blocks = 0;
+        int finalCount = 0;
+        for (int q = 0; q < n; q++) {
+            if (finals[order[q]]) {
+                elems[finalCount++] = q;
+            }
+        }
+        int pos = finalCount;
+        for (int q = 0; q < total; q++) {
+            if (q == dead || !finals[order[q]]) {
+                elems[pos++] = q;
+            }
+        }
+        if (finalCount > 0) {
+            first[blocks] = 0;
+            end[blocks++] = finalCount;
+        }
+        first[blocks] = finalCount;
+        end[blocks++] = total;
+        for (int b = 0; b < blocks; b++) {
+            for (int i = first[b]; i < end[b]; i++) {
+                blockOf[elems[i]] = b;
+                loc[elems[i]] = i;
+            }
+        }
+
+        // Splitters (block, column) still to process
+        boolean[] waiting = new boolean[total * k];
+        int[] work = new int[total * k];
+        int workSize = 0;
+        int smaller = blocks == 1 || end[0] - first[0] <= end[1] - first[1] ? 0 : 1;
+        for (int c = 0; c < k; c++) {
+            waiting[smaller * k + c] = true;
+            work[workSize++] = smaller * k + c;
+        }
+
+        int[] splitter = new int[total];
+        int[] seen = new int[total];
+        int stamp = 0;
+        int[] touched = new int[total];
+        while (workSize > 0) {
+            int item = work[--workSize];
+            waiting[item] = false;
+            int a = item / k;
+            int c = item % k;
+
+            // Collects the states of block a first, since a may itself be split
+            int size = 0;
+            for (int i = first[a]; i < end[a]; i++) {
+                splitter[size++] = elems[i];
+            }
+
+            // Marks every predecessor on c by moving it to the front of its block
+            stamp++;
+            int touchedCount = 0;
+            for (int j = 0; j < size; j++) {
+                int t = splitter[j];
+                for (int i = preIndex[t * k + c], last = preIndex[t * k + c + 1]; i < last; i++) {
+                    int x = pre[i];
+                    if (seen[x] == stamp) {
+                        continue;
+                    }
+                    seen[x] = stamp;
+                    int b = blockOf[x];
+                    if (marked[b] == 0) {
+                        touched[touchedCount++] = b;
+                    }
+                    int dest = first[b] + marked[b]++;
+                    int other = elems[dest];
+                    elems[loc[x]] = other;
+                    loc[other] = loc[x];
+                    elems[dest] = x;
+                    loc[x] = dest;
+                }
+            }
+
+            // Splits every touched block into its marked and unmarked parts
+            for (int j = 0; j < touchedCount; j++) {
+                int b = touched[j];
+                int m = marked[b];
+                marked[b] = 0;
+                if (m == end[b] - first[b]) {
+                    continue;
+                }
+                int nb = blocks++;
+                first[nb] = first[b];
+                end[nb] = first[b] + m;
+                first[b] = end[nb];
+                for (int i = first[nb]; i < end[nb]; i++) {
+                    blockOf[elems[i]] = nb;
+                }
+                for (int d = 0; d < k; d++) {
+                    int add;
+                    if (waiting[b * k + d]) {
+                        add = nb;
+                    } else {
+                        add = end[nb] - first[nb] <= end[b] - first[b] ? nb : b;
+                    }
+                    waiting[add * k + d] = true;
+                    work[workSize++] = add * k + d;
+                }
+            }
+        }
+
+        // Builds the result in breadth-first order, leaving out the dead block
+        int deadBlock = blockOf[dead];
+        String[] names = new String[blocks];
+        for (int q = 0; q < n; q++) {
+            int b = blockOf[q];
+            if (b != deadBlock && names[b] == null) {
+                names[b] = byId.get(order[q]).getName();
+                min.addState(names[b]);
+                if (finals[order[q]]) {
+                    min.setFinal(names[b]);
+                }
+            }
+        }
+        int startBlock = blockOf[0];
+        if (startBlock == deadBlock) {
+            min.addState(startState.getName());
+            min.setStart(startState.getName());
+            return min;
+        }
+        min.setStart(names[startBlock]);
+        for (int q = 0; q < n; q++) {
+            int b = blockOf[q];
+            if (b == deadBlock || !names[b].equals(byId.get(order[q]).getName())) {
+                continue;
+            }
+            for (int c = 0; c < k; c++) {
+                int to = blockOf[next[q * k + c]];
+                if (to != deadBlock) {
+                    min.delta[min.states.get(names[b]).getId() * k + c] = min.states.get(names[to]).getId();
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Looks up the column of a symbol in the delta table.
+     *
+     * @param c the symbol
+     * @return the column, or -1 if the symbol is not in the alphabet
+     */
+    private int columnOf(char c) {
+        if (c < DIRECT_SIZE) {
+            return direct[c];
+        }
+        int i = Arrays.binarySearch(sortedLow, c);
+        if (i >= 0) {
+            return sortedColumns[i];
+        }
+        i = -i - 2;
+        return i >= 0 && sortedHigh[i] >= c ? sortedColumns[i] : -1;
+    }
+
+    /**
+     * Gets the alphabet of the DFA.
+     *
+     * @return a set of characters representing the alphabet
+     */
+    @Override
+    public Set<Character> getSigma() {
+        Set<Character> sigma = new LinkedHashSet<>();
+        for (int c = 0; c < columnCount; c++) {
+            for (int symbol = classLow[c]; symbol <= classHigh[c]; symbol++) {
+                sigma.add((char) symbol);
+            }
+        }
+        return sigma;
+    }
+
+    /**
+     * Finds a state by name within the DFA.
+     *
+     * @param name the name of the state to find
+     * @return the state with the specified name, or null if not found
+     */
+    @Override
+    public DFAState getState(String name) {
+        return states.get(name);
+    }
+
+    /**
+     * Gets the number of states.
+     *
+     * @return the state count
+     */
+    public int getStateCount() {
+        return byId.size();
+    }
+
+    /**
+     * Checks if the state is a final state.
+     *
+     * @param name the name of the state to check
+     * @return true if the state is a final state, false otherwise
+     */
+    @Override
+    public boolean isFinal(String name) {
+        DFAState state = states.get(name);
+        return state != null && state.isFinal();
+    }
+
+    /**
+     * Checks if the state is the start state.
+     *
+     * @param name the name of the state to check
+     * @return true if the state is the start state, false otherwise
+     */
+    @Override
+    public boolean isStart(String name) {
+        return startState != null && startState.getName().equals(name);
+    }
+}
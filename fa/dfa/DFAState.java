@@ -0,0 +1,52 @@
+package fa.dfa;
+
+import fa.State;
+
+/**
+ * This class represents a state in a Deterministic Finite Automaton (DFA).
+ * Transitions are not stored on the state itself but in the flat delta table
+ * of the owning DFA, indexed by the state's id.
+ */
+public class DFAState extends State {
+
+    private final int id;
+    private boolean isFinal;
+
+    /**
+     * Constructs a DFAState with the given name and row in the delta table.
+     *
+     * @param name The name of the state.
+     * @param id The index of the state's row in the delta table.
+     */
+    DFAState(String name, int id) {
+        super(name);
+        this.id = id;
+    }
+
+    /**
+     * Gets the index of this state's row in the delta table.
+     *
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Marks this state as accepting or not.
+     *
+     * @param isFinal True to mark this state as final, false otherwise.
+     */
+    void setFinal(boolean isFinal) {
+        this.isFinal = isFinal;
+    }
+
+    /**
+     * Checks if this state is accepting.
+     *
+     * @return True if this is a final state, false otherwise.
+     */
+    public boolean isFinal() {
+        return isFinal;
+    }
+}
@@ -0,0 +1,135 @@
+package fa.nfa;
+
+/**
+ * A bit-parallel simulation of a compiled NFA with at most 64 states. The
+ * set of active states is a single {@code long}, and the successors of every
+ * state on every column are precomputed as a mask that already includes
+ * their epsilon closures. The masks are combined per byte of the state set:
+ * for every column and every group of eight states there is a table of the
+ * union of successors for each of the 256 subsets of the group, so a step is
+ * at most eight lookups and ORs however many states are active, with no
+ * closure search. When the tables for a large alphabet would exceed
+ * {@link #MAX_TABLE_SIZE} masks, a step ORs one mask per active state instead.
+ *
+ * Instances are immutable and safe to share between threads.
+ */
+public final class BitParallelNFA {
+    /** The most states a bit-parallel simulation can hold. */
+    public static final int MAX_STATES = 64;
+
+    /** The most masks kept in the per-byte successor tables. */
+    static final int MAX_TABLE_SIZE = 1 << 16;
+
+    private final ColumnMap columns;
+    private final int columnCount;
+    private final long startMask;
+    private final long finalMask;
+    private final long universalMask;
+
+    // Successors of a state on a column, used when the byte tables are too large
+    private final long[] delta;
+
+    // Successors of the states in byte b of the set (states 8 * b to 8 * b + 7)
+    // on column c, for each value v of that byte, at ((c * chunks + b) << 8) + v
+    private final long[] chunkDelta;
+    private final int chunks;
+
+    /**
+     * Precomputes the masks of a compiled NFA.
+     *
+     * @param nfa a compiled NFA with at most {@link #MAX_STATES} states
+     */
+    BitParallelNFA(CompiledNFA nfa) {
+        int n = nfa.getStateCount();
+        if (n > MAX_STATES) {
+            throw new IllegalArgumentException(n + " states do not fit in " + MAX_STATES + " bits");
+        }
+        columns = nfa.columns;
+        columnCount = nfa.columnCount;
+
+        StateSet set = new StateSet(n);
+        int[] stack = new int[n];
+        long[] closures = new long[n];
+        for (int q = 0; q < n; q++) {
+            set.clear();
+            nfa.close(q, set, stack);
+            closures[q] = set.bits[0];
+        }
+
+        startMask = nfa.start < 0 ? 0 : closures[nfa.start];
+        finalMask = n == 0 ? 0 : nfa.finals[0];
+        long[] universal = nfa.universal();
+        universalMask = universal == null ? 0 : universal[0];
+        long[] masks = new long[n * columnCount];
+        for (int row = 0; row < masks.length; row++) {
+            long mask = 0;
+            for (int i = nfa.deltaIndex[row], end = nfa.deltaIndex[row + 1]; i < end; i++) {
+                mask |= closures[nfa.deltaTargets[i]];
+            }
+            masks[row] = mask;
+        }
+
+        chunks = (n + 7) >>> 3;
+        if ((long) columnCount * chunks << 8 > MAX_TABLE_SIZE) {
+            delta = masks;
+            chunkDelta = null;
+            return;
+        }
+        delta = null;
+        chunkDelta = new long[columnCount * chunks << 8];
+        for (int column = 0; column < columnCount; column++) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int base = (column * chunks + chunk) << 8;
+                // Each byte value adds the mask of its lowest state to the value without it
+                for (int v = 1; v < 256; v++) {
+                    int q = (chunk << 3) + Integer.numberOfTrailingZeros(v);
+                    long own = q < n ? masks[q * columnCount + column] : 0;
+                    chunkDelta[base + v] = chunkDelta[base + (v & (v - 1))] | own;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the NFA accepts a string. The loop stops as soon as no
+     * state is active, or as soon as a universal state is.
+     *
+     * @param s the input string to check
+     * @return true if the input string is accepted, false otherwise
+     */
+    public boolean accepts(String s) {
+        long active = startMask;
+        for (int i = 0; i < s.length(); i++) {
+            if ((active & universalMask) != 0) {
+                return columns.covers(s, i);
+            }
+            int column = columns.columnOf(s.charAt(i));
+            if (column < 0) {
+                return false;
+            }
+            active = step(active, column);
+            if (active == 0) {
+                return false;
+            }
+        }
+        return (active & finalMask) != 0;
+    }
+
+    /**
+     * Gets the states reached from a set of active states on a column.
+     */
+    private long step(long active, int column) {
+        long next = 0;
+        if (chunkDelta == null) {
+            for (long rest = active; rest != 0; rest &= rest - 1) {
+                next |= delta[Long.numberOfTrailingZeros(rest) * columnCount + column];
+            }
+            return next;
+        }
+        int base = column * chunks << 8;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            next |= chunkDelta[base + (chunk << 8) + (int) ((active >>> (chunk << 3)) & 0xFF)];
+        }
+        return next;
+    }
+}
@@ -0,0 +1,197 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Maps input characters to the column indices used by the flat transition
+ * tables of a {@link CompiledNFA}. The characters that have a column are kept
+ * as sorted, disjoint ranges, each with its column. ASCII characters are
+ * resolved with a direct table lookup and anything else with a binary search
+ * over the range starts.
+ */
+final class ColumnMap {
+    private static final int DIRECT_SIZE = 128;
+
+    private final int[] direct;
+    private final char[] starts;
+    private final char[] ends;
+    private final int[] rangeColumns;
+    private final int columnCount;
+
+    /**
+     * Rebuilds a map from its ranges and their columns.
+     *
+     * @param starts the first character of each range, in ascending order
+     * @param ends the last character of each range
+     * @param rangeColumns the column of each range
+     * @param columnCount the number of columns
+     */
+    ColumnMap(char[] starts, char[] ends, int[] rangeColumns, int columnCount) {
+        this.starts = starts;
+        this.ends = ends;
+        this.rangeColumns = rangeColumns;
+        this.columnCount = columnCount;
+        direct = new int[DIRECT_SIZE];
+        Arrays.fill(direct, -1);
+        for (int i = 0; i < starts.length && starts[i] < DIRECT_SIZE; i++) {
+            for (int c = starts[i]; c <= ends[i] && c < DIRECT_SIZE; c++) {
+                direct[c] = rangeColumns[i];
+            }
+        }
+    }
+
+    /**
+     * Builds a map for the symbols of sigma and the character ranges of range
+     * transitions. The covered characters are cut at every symbol and range
+     * boundary, and each resulting piece gets its own column in ascending
+     * order, so every symbol and every range is made of whole columns.
+     *
+     * @param sigma the symbols of sigma, possibly with repeats
+     * @param lows the first character of each range
+     * @param highs the last character of each range
+     * @param rangeCount the number of ranges
+     * @return the column map
+     */
+    static ColumnMap of(char[] sigma, char[] lows, char[] highs, int rangeCount) {
+        // Every covered interval [a, b] cuts the characters at a and at b + 1
+        int[] cuts = new int[2 * (sigma.length + rangeCount)];
+        int n = 0;
+        for (char symbol : sigma) {
+            cuts[n++] = symbol;
+            cuts[n++] = symbol + 1;
+        }
+        for (int i = 0; i < rangeCount; i++) {
+            cuts[n++] = lows[i];
+            cuts[n++] = highs[i] + 1;
+        }
+        Arrays.sort(cuts, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || cuts[i] != cuts[distinct - 1]) {
+                cuts[distinct++] = cuts[i];
+            }
+        }
+
+        // Counts the intervals opening and closing at each cut
+        int[] cover = new int[distinct];
+        for (char symbol : sigma) {
+            cover[Arrays.binarySearch(cuts, 0, distinct, symbol)]++;
+            cover[Arrays.binarySearch(cuts, 0, distinct, symbol + 1)]--;
+        }
+        for (int i = 0; i < rangeCount; i++) {
+            cover[Arrays.binarySearch(cuts, 0, distinct, lows[i])]++;
+            cover[Arrays.binarySearch(cuts, 0, distinct, highs[i] + 1)]--;
+        }
+
+        int pieceLimit = Math.max(distinct - 1, 0);
+        char[] starts = new char[pieceLimit];
+        char[] ends = new char[pieceLimit];
+        int[] columns = new int[pieceLimit];
+        int pieces = 0;
+        int depth = 0;
+        for (int i = 0; i < pieceLimit; i++) {
+            depth += cover[i];
+            if (depth > 0) {
+                starts[pieces] = (char) cuts[i];
+                ends[pieces] = (char) (cuts[i + 1] - 1);
+                columns[pieces] = pieces;
+                pieces++;
+            }
+        }
+        return new ColumnMap(Arrays.copyOf(starts, pieces), Arrays.copyOf(ends, pieces),
+                Arrays.copyOf(columns, pieces), pieces);
+    }
+
+    /**
+     * Looks up the column of a character.
+     *
+     * @param c the input character
+     * @return the column of c, or -1 if c is not in the alphabet
+     */
+    int columnOf(char c) {
+        if (c < DIRECT_SIZE) {
+            return direct[c];
+        }
+        int i = firstRangeFrom(c);
+        if (i < starts.length && starts[i] == c) {
+            return rangeColumns[i];
+        }
+        return i > 0 && ends[i - 1] >= c ? rangeColumns[i - 1] : -1;
+    }
+
+    /**
+     * Checks that every character of a sequence, from an index on, has a
+     * column.
+     *
+     * @param s the characters
+     * @param from the index of the first character to check
+     * @return true if none of the characters is outside the alphabet
+     */
+    boolean covers(CharSequence s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (columnOf(s.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first range that starts at or after a character.
+     *
+     * @param c the character
+     * @return the index of that range, or the range count if there is none
+     */
+    int firstRangeFrom(char c) {
+        int i = Arrays.binarySearch(starts, c);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * Gets the number of ranges in the map.
+     *
+     * @return the range count
+     */
+    int rangeCount() {
+        return starts.length;
+    }
+
+    /**
+     * Gets the first character of a range.
+     *
+     * @param i the index of the range
+     * @return the first character
+     */
+    char rangeStart(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Gets the last character of a range.
+     *
+     * @param i the index of the range
+     * @return the last character
+     */
+    char rangeEnd(int i) {
+        return ends[i];
+    }
+
+    /**
+     * Gets the column of a range.
+     *
+     * @param i the index of the range
+     * @return the column
+     */
+    int rangeColumn(int i) {
+        return rangeColumns[i];
+    }
+
+    /**
+     * Gets the number of distinct columns.
+     *
+     * @return the column count
+     */
+    int columnCount() {
+        return columnCount;
+    }
+}
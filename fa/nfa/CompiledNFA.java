@@ -0,0 +1,823 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * An immutable, integer-indexed form of an {@link NFA}. States are numbered
+ * from 0, input characters that every state treats alike share a column, and
+ * delta is stored as flat successor arrays so that simulation runs over
+ * primitive state sets instead of HashSets of NFAState objects.
+ *
+ * A CompiledNFA never changes after it is built, and {@link #accepts} keeps
+ * its scratch space in per-thread state sets that hold no reference to the
+ * automaton, so one instance can be shared by any number of threads and is
+ * not kept alive by the threads that used it.
+ */
+public final class CompiledNFA {
+    /** The number of inputs of a stream that {@link #acceptsAll(Stream)} checks at once. */
+    static final int STREAM_CHUNK = 8192;
+
+    final String[] names;
+    final int start;
+    final long[] finals;
+    final ColumnMap columns;
+    final int columnCount;
+
+    // Successors of state q on column c are deltaTargets[deltaIndex[q * columnCount + c]]
+    // up to (but excluding) deltaTargets[deltaIndex[q * columnCount + c + 1]]
+    final int[] deltaIndex;
+    final int[] deltaTargets;
+
+    // Epsilon successors of state q, laid out the same way with one row per state
+    final int[] epsIndex;
+    final int[] epsTargets;
+
+    private final BitParallelNFA bitParallel;
+    private volatile Utf8Table utf8;
+    private volatile long[] universal;
+
+    /**
+     * Builds the flat tables from parallel edge arrays.
+     *
+     * @param names the state names indexed by id
+     * @param start the id of the start state, or -1 if there is none
+     * @param finals the final states as a bit set indexed by id
+     * @param columns the column map of the alphabet
+     * @param edgeFrom the source id of each symbol edge
+     * @param edgeColumn the column of each symbol edge
+     * @param edgeTo the target id of each symbol edge
+     * @param edgeCount the number of symbol edges
+     * @param epsFrom the source id of each epsilon edge
+     * @param epsTo the target id of each epsilon edge
+     * @param epsCount the number of epsilon edges
+     */
+    CompiledNFA(String[] names, int start, long[] finals, ColumnMap columns,
+            int[] edgeFrom, int[] edgeColumn, int[] edgeTo, int edgeCount,
+            int[] epsFrom, int[] epsTo, int epsCount) {
+        this.names = names;
+        this.start = start;
+        this.finals = finals;
+        this.columns = columns;
+        this.columnCount = columns.columnCount();
+
+        int[] rows = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            rows[i] = edgeFrom[i] * columnCount + edgeColumn[i];
+        }
+        deltaIndex = rowIndex(names.length * columnCount, rows, edgeCount);
+        deltaTargets = scatter(deltaIndex, rows, edgeTo, edgeCount);
+
+        epsIndex = rowIndex(names.length, epsFrom, epsCount);
+        epsTargets = scatter(epsIndex, epsFrom, epsTo, epsCount);
+
+        bitParallel = names.length <= BitParallelNFA.MAX_STATES ? new BitParallelNFA(this) : null;
+    }
+
+    /**
+     * Builds a compiled NFA from transitions given as edge arrays. Symbol
+     * edges on 'e' are epsilon edges and, when 'e' has a column, also edges
+     * on that column, matching how the input character 'e' has always been
+     * simulated. A range edge becomes one edge on every column inside its
+     * range.
+     *
+     * @param names the state names indexed by id
+     * @param start the id of the start state, or -1 if there is none
+     * @param finals the final states as a bit set indexed by id
+     * @param sigma the symbols of sigma, possibly with repeats
+     * @param from the source id of each symbol edge
+     * @param symbols the symbol of each symbol edge
+     * @param to the target id of each symbol edge
+     * @param count the number of symbol edges
+     * @param rangeFrom the source id of each range edge
+     * @param lows the first character of each range edge
+     * @param highs the last character of each range edge
+     * @param rangeTo the target id of each range edge
+     * @param rangeCount the number of range edges
+     * @return the compiled NFA
+     */
+    static CompiledNFA of(String[] names, int start, long[] finals, char[] sigma,
+            int[] from, char[] symbols, int[] to, int count,
+            int[] rangeFrom, char[] lows, char[] highs, int[] rangeTo, int rangeCount) {
+        ColumnMap columns = ColumnMap.of(sigma, lows, highs, rangeCount);
+        int edgeCount = 0;
+        int epsCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (columns.columnOf(symbols[i]) >= 0) {
+                edgeCount++;
+            }
+            if (symbols[i] == 'e') {
+                epsCount++;
+            }
+        }
+        for (int i = 0; i < rangeCount; i++) {
+            for (int r = columns.firstRangeFrom(lows[i]); r < columns.rangeCount()
+                    && columns.rangeStart(r) <= highs[i]; r++) {
+                edgeCount++;
+            }
+        }
+
+        int[] edgeFrom = new int[edgeCount];
+        int[] edgeColumn = new int[edgeCount];
+        int[] edgeTo = new int[edgeCount];
+        int[] epsFrom = new int[epsCount];
+        int[] epsTo = new int[epsCount];
+        edgeCount = 0;
+        epsCount = 0;
+        for (int i = 0; i < count; i++) {
+            int column = columns.columnOf(symbols[i]);
+            if (column >= 0) {
+                edgeFrom[edgeCount] = from[i];
+                edgeColumn[edgeCount] = column;
+                edgeTo[edgeCount++] = to[i];
+            }
+            if (symbols[i] == 'e') {
+                epsFrom[epsCount] = from[i];
+                epsTo[epsCount++] = to[i];
+            }
+        }
+        for (int i = 0; i < rangeCount; i++) {
+            for (int r = columns.firstRangeFrom(lows[i]); r < columns.rangeCount()
+                    && columns.rangeStart(r) <= highs[i]; r++) {
+                edgeFrom[edgeCount] = rangeFrom[i];
+                edgeColumn[edgeCount] = columns.rangeColumn(r);
+                edgeTo[edgeCount++] = rangeTo[i];
+            }
+        }
+        return mergeColumns(names, start, finals, columns,
+                edgeFrom, edgeColumn, edgeTo, edgeCount, epsFrom, epsTo, epsCount);
+    }
+
+    /**
+     * Merges columns that every state treats alike into equivalence classes
+     * before building the tables. Two columns are alike when they have the
+     * same set of (from, to) edges, so the tables only need one column per
+     * class, and the character ranges of a class share its column.
+     */
+    static CompiledNFA mergeColumns(String[] names, int start, long[] finals, ColumnMap columns,
+            int[] edgeFrom, int[] edgeColumn, int[] edgeTo, int edgeCount,
+            int[] epsFrom, int[] epsTo, int epsCount) {
+        int pieces = columns.columnCount();
+        int[] byColumn = rowIndex(pieces, edgeColumn, edgeCount);
+        long[] edges = new long[edgeCount];
+        int[] next = Arrays.copyOf(byColumn, pieces);
+        for (int i = 0; i < edgeCount; i++) {
+            edges[next[edgeColumn[i]]++] = ((long) edgeFrom[i] << 32) | edgeTo[i];
+        }
+
+        // Sorts and dedups the edges of each column; a LongBuffer over the
+        // result compares by content, so it serves as the key of the column
+        Map<LongBuffer, Integer> classes = new HashMap<>();
+        int[] classOf = new int[pieces];
+        int[] distinctEnd = new int[pieces];
+        int[] representative = new int[pieces];
+        for (int c = 0; c < pieces; c++) {
+            Arrays.sort(edges, byColumn[c], byColumn[c + 1]);
+            int end = byColumn[c];
+            for (int i = byColumn[c]; i < byColumn[c + 1]; i++) {
+                if (end == byColumn[c] || edges[i] != edges[end - 1]) {
+                    edges[end++] = edges[i];
+                }
+            }
+            distinctEnd[c] = end;
+            LongBuffer key = LongBuffer.wrap(edges, byColumn[c], end - byColumn[c]);
+            Integer known = classes.get(key);
+            if (known == null) {
+                known = classes.size();
+                classes.put(key, known);
+                representative[known] = c;
+            }
+            classOf[c] = known;
+        }
+        int classCount = classes.size();
+
+        int mergedCount = 0;
+        for (int k = 0; k < classCount; k++) {
+            mergedCount += distinctEnd[representative[k]] - byColumn[representative[k]];
+        }
+        int[] from = new int[mergedCount];
+        int[] column = new int[mergedCount];
+        int[] to = new int[mergedCount];
+        mergedCount = 0;
+        for (int k = 0; k < classCount; k++) {
+            int c = representative[k];
+            for (int i = byColumn[c]; i < distinctEnd[c]; i++) {
+                from[mergedCount] = (int) (edges[i] >>> 32);
+                column[mergedCount] = k;
+                to[mergedCount++] = (int) edges[i];
+            }
+        }
+
+        // Adjacent ranges that end up in the same class become one range
+        int rangeCount = columns.rangeCount();
+        char[] starts = new char[rangeCount];
+        char[] ends = new char[rangeCount];
+        int[] rangeClasses = new int[rangeCount];
+        int ranges = 0;
+        for (int i = 0; i < rangeCount; i++) {
+            int k = classOf[columns.rangeColumn(i)];
+            if (ranges > 0 && rangeClasses[ranges - 1] == k && ends[ranges - 1] + 1 == columns.rangeStart(i)) {
+                ends[ranges - 1] = columns.rangeEnd(i);
+                continue;
+            }
+            starts[ranges] = columns.rangeStart(i);
+            ends[ranges] = columns.rangeEnd(i);
+            rangeClasses[ranges++] = k;
+        }
+        ColumnMap merged = new ColumnMap(Arrays.copyOf(starts, ranges), Arrays.copyOf(ends, ranges),
+                Arrays.copyOf(rangeClasses, ranges), classCount);
+        return new CompiledNFA(names, start, finals, merged,
+                from, column, to, mergedCount, epsFrom, epsTo, epsCount);
+    }
+
+    /**
+     * Gets the number of columns of the transition tables, which is the
+     * number of equivalence classes of input characters.
+     *
+     * @return the column count
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Counts the edges of each row and turns the counts into start offsets.
+     */
+    private static int[] rowIndex(int rowCount, int[] rows, int count) {
+        int[] index = new int[rowCount + 1];
+        for (int i = 0; i < count; i++) {
+            index[rows[i] + 1]++;
+        }
+        for (int i = 0; i < rowCount; i++) {
+            index[i + 1] += index[i];
+        }
+        return index;
+    }
+
+    /**
+     * Places every edge target into the slot range of its row.
+     */
+    private static int[] scatter(int[] index, int[] rows, int[] targets, int count) {
+        int[] out = new int[count];
+        int[] next = new int[index.length - 1];
+        System.arraycopy(index, 0, next, 0, next.length);
+        for (int i = 0; i < count; i++) {
+            out[next[rows[i]]++] = targets[i];
+        }
+        return out;
+    }
+
+    /**
+     * Gets the number of states.
+     *
+     * @return the state count
+     */
+    public int getStateCount() {
+        return names.length;
+    }
+
+    /**
+     * Gets the name a state had in the source NFA.
+     *
+     * @param id the state id
+     * @return the state name
+     */
+    public String getStateName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Writes the compiled NFA to a file in the binary format described in
+     * {@link MappedNFA}, which can map it back without rebuilding any states.
+     *
+     * @param path the file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        int rangeCount = columns.rangeCount();
+        int finalWords = (names.length + 31) >>> 5;
+        int ints = MappedNFA.HEADER_INTS + 3 * rangeCount + deltaIndex.length + deltaTargets.length
+                + epsIndex.length + epsTargets.length + finalWords;
+        ByteBuffer buffer = ByteBuffer.allocate(ints * 4).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer out = buffer.asIntBuffer();
+
+        out.put(MappedNFA.MAGIC).put(MappedNFA.VERSION).put(names.length).put(start)
+                .put(columnCount).put(rangeCount).put(deltaTargets.length).put(epsTargets.length);
+        for (int i = 0; i < rangeCount; i++) {
+            out.put(columns.rangeStart(i)).put(columns.rangeEnd(i)).put(columns.rangeColumn(i));
+        }
+        out.put(deltaIndex).put(deltaTargets).put(epsIndex).put(epsTargets);
+        for (int w = 0; w < finalWords; w++) {
+            out.put((int) (finals[w >>> 1] >>> ((w & 1) * 32)));
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Checks if the compiled NFA accepts a string. NFAs with at most 64
+     * states are simulated bit-parallel; larger ones reuse the calling
+     * thread's state sets, so only a small matcher is allocated per call.
+     * Either way the simulation stops early once no state is active, and
+     * once a universal state is active only the rest of the input's
+     * characters are looked up.
+     *
+     * @param s the input string to check
+     * @return true if the input string is accepted, false otherwise
+     */
+    public boolean accepts(String s) {
+        if (bitParallel != null) {
+            return bitParallel.accepts(s);
+        }
+        if (start < 0) {
+            return false;
+        }
+        NFAMatcher matcher = scratchMatcher();
+        matcher.feed(s);
+        return matcher.isAccepting();
+    }
+
+    /**
+     * Checks if the compiled NFA accepts a string, reporting every step of
+     * the simulation to an observer.
+     *
+     * @param s the input string to check
+     * @param observer the observer of the simulation
+     * @return true if the input string is accepted, false otherwise
+     */
+    public boolean accepts(String s, SimulationObserver observer) {
+        NFAMatcher matcher = matcher().observe(observer);
+        matcher.feed(s);
+        return matcher.isAccepting();
+    }
+
+    /**
+     * Computes the max number of states that are active at once while
+     * simulating a string, counting the start state's epsilon closure.
+     *
+     * @param s the input string
+     * @return the maximum number of active states, or -1 if there is no start state
+     */
+    public int maxCopies(String s) {
+        if (start < 0) {
+            return -1;
+        }
+        int[] max = {0};
+        accepts(s, (step, symbol, activeStates, closureWork) -> max[0] = Math.max(max[0], activeStates));
+        return max[0];
+    }
+
+    /**
+     * Finds the first span of a string that the NFA accepts: the match that
+     * starts leftmost, and the longest of the matches starting there. The
+     * search is a single pass that starts a new thread of the simulation at
+     * every position instead of matching every substring separately.
+     *
+     * @param s the input to search
+     * @param from the first position a match may start at
+     * @return the match, or null if no span from that position on is accepted
+     */
+    public Match find(CharSequence s, int from) {
+        return new Searcher(this).find(s, from);
+    }
+
+    /**
+     * Finds every match in a string, from left to right and without overlap,
+     * as repeated calls to {@link #find} would. After an empty match the
+     * search resumes one position later.
+     *
+     * @param s the input to search
+     * @return the matches in order
+     */
+    public List<Match> findAll(CharSequence s) {
+        Searcher searcher = new Searcher(this);
+        List<Match> matches = new ArrayList<>();
+        Match match = searcher.find(s, 0);
+        while (match != null) {
+            matches.add(match);
+            int from = match.getEnd() > match.getStart() ? match.getEnd() : match.getEnd() + 1;
+            match = searcher.find(s, from);
+        }
+        return matches;
+    }
+
+    /**
+     * Checks whether every input this NFA accepts is also accepted by
+     * another, without determinizing either; see {@link Inclusion}.
+     *
+     * @param other the NFA whose language should contain this one's
+     * @return true if the language of this NFA is a subset of the other's
+     */
+    public boolean isSubsetOf(CompiledNFA other) {
+        return new Inclusion(this, other).holds();
+    }
+
+    /**
+     * Checks whether this NFA and another accept exactly the same inputs.
+     *
+     * @param other the NFA to compare with
+     * @return true if both languages are equal
+     */
+    public boolean isEquivalentTo(CompiledNFA other) {
+        return isSubsetOf(other) && other.isSubsetOf(this);
+    }
+
+    /**
+     * Checks many inputs at once on the common fork-join pool. Each worker
+     * thread reuses its own matcher, so there is no allocation per input.
+     *
+     * @param inputs the input strings
+     * @return whether each input, by index, is accepted
+     */
+    public boolean[] acceptsAll(List<String> inputs) {
+        List<String> indexed = inputs instanceof RandomAccess ? inputs : new ArrayList<>(inputs);
+        boolean[] results = new boolean[indexed.size()];
+        IntStream.range(0, results.length).parallel()
+                .forEach(i -> results[i] = accepts(indexed.get(i)));
+        return results;
+    }
+
+    /**
+     * Checks every input of a stream on the common fork-join pool. The
+     * stream is read in chunks of {@link #STREAM_CHUNK} inputs, each checked
+     * in parallel before the next is read, so only one chunk and the result
+     * are held in memory however long the stream is.
+     *
+     * @param inputs the input strings, in order
+     * @return the set of indices of accepted inputs
+     */
+    public BitSet acceptsAll(Stream<String> inputs) {
+        BitSet accepted = new BitSet();
+        String[] chunk = new String[STREAM_CHUNK];
+        boolean[] results = new boolean[STREAM_CHUNK];
+        Iterator<String> it = inputs.iterator();
+        long offset = 0;
+        while (it.hasNext()) {
+            int size = 0;
+            while (size < chunk.length && it.hasNext()) {
+                chunk[size++] = it.next();
+            }
+            IntStream.range(0, size).parallel()
+                    .forEach(i -> results[i] = accepts(chunk[i]));
+            for (int i = 0; i < size; i++) {
+                if (results[i]) {
+                    accepted.set(Math.toIntExact(offset + i));
+                }
+            }
+            offset += size;
+        }
+        return accepted;
+    }
+
+    /**
+     * Gets the bit-parallel simulation of this NFA.
+     *
+     * @return the bit-parallel form, or null if there are more than
+     *         {@link BitParallelNFA#MAX_STATES} states
+     */
+    public BitParallelNFA bitParallel() {
+        return bitParallel;
+    }
+
+    /**
+     * Checks if the compiled NFA accepts UTF-8 encoded input, matching the
+     * bytes directly against the encodings of the symbols of sigma.
+     *
+     * @param bytes the UTF-8 encoded input
+     * @return true if the decoded input would be accepted, false otherwise
+     */
+    public boolean acceptsUtf8(byte[] bytes) {
+        NFAMatcher matcher = scratchMatcher();
+        matcher.feedUtf8(bytes, 0, bytes.length);
+        return matcher.isAccepting();
+    }
+
+    /**
+     * Checks if the compiled NFA accepts the remaining UTF-8 encoded bytes of
+     * a buffer, leaving its position at its limit.
+     *
+     * @param buffer the UTF-8 encoded input
+     * @return true if the decoded input would be accepted, false otherwise
+     */
+    public boolean acceptsUtf8(ByteBuffer buffer) {
+        NFAMatcher matcher = scratchMatcher();
+        matcher.feedUtf8(buffer);
+        return matcher.isAccepting();
+    }
+
+    /**
+     * Gets the UTF-8 byte trie of sigma, building it on first use.
+     *
+     * @return the byte trie
+     */
+    Utf8Table utf8Table() {
+        Utf8Table table = utf8;
+        if (table == null) {
+            table = new Utf8Table(columns);
+            utf8 = table;
+        }
+        return table;
+    }
+
+    /**
+     * Creates a matcher for input that arrives in pieces.
+     *
+     * @return a new matcher positioned at the start of the input
+     */
+    public NFAMatcher matcher() {
+        return new NFAMatcher(this);
+    }
+
+    /**
+     * Creates a matcher over the calling thread's scratch space, which keeps
+     * no reference to this NFA once the matcher is dropped.
+     */
+    private NFAMatcher scratchMatcher() {
+        Scratch scratch = Scratch.forThread(names.length);
+        return new NFAMatcher(this, scratch.current, scratch.next, scratch.stack);
+    }
+
+    /**
+     * Adds a state and its epsilon closure to a set. States already in the
+     * set are skipped, since their closure was added along with them.
+     *
+     * @param id the state to add
+     * @param set the set being built
+     * @param stack scratch space of at least one slot per state
+     * @return the number of epsilon edges followed
+     */
+    int close(int id, StateSet set, int[] stack) {
+        if (!set.add(id)) {
+            return 0;
+        }
+        int work = 0;
+        int top = 0;
+        stack[top++] = id;
+        while (top > 0) {
+            int q = stack[--top];
+            work += epsIndex[q + 1] - epsIndex[q];
+            for (int i = epsIndex[q], end = epsIndex[q + 1]; i < end; i++) {
+                int to = epsTargets[i];
+                if (set.add(to)) {
+                    stack[top++] = to;
+                }
+            }
+        }
+        return work;
+    }
+
+    /**
+     * Replaces the contents of {@code to} with the epsilon closure of every
+     * state reachable from {@code from} on the given column.
+     *
+     * @param from the active states
+     * @param column the column of the input symbol
+     * @param to the set that receives the next active states
+     * @param stack scratch space of at least one slot per state
+     * @return the number of epsilon edges followed
+     */
+    int step(StateSet from, int column, StateSet to, int[] stack) {
+        to.clear();
+        int work = 0;
+        for (int k = 0; k < from.size; k++) {
+            int row = from.dense[k] * columnCount + column;
+            for (int i = deltaIndex[row], end = deltaIndex[row + 1]; i < end; i++) {
+                work += close(deltaTargets[i], to, stack);
+            }
+        }
+        return work;
+    }
+
+    /**
+     * Gets the universal states, from which every input made of characters
+     * in the alphabet is accepted, computing them on first use. Once such a
+     * state is active, the rest of the input only has to be checked for
+     * characters outside the alphabet.
+     *
+     * @return the universal states as a bit set indexed by id, or null if
+     *         there are none
+     */
+    long[] universal() {
+        long[] result = universal;
+        if (result == null) {
+            result = findUniversal();
+            universal = result;
+        }
+        return result.length == 0 ? null : result;
+    }
+
+    /**
+     * Finds the universal states as a greatest fixpoint. Every state whose
+     * epsilon closure holds a final state starts as a candidate, and a
+     * candidate is dropped while some column leads from its closure to no
+     * candidate at all. Each remaining state therefore accepts the empty
+     * input and keeps a remaining state active on every character, so it
+     * accepts every input by induction.
+     *
+     * A state whose closure holds a candidate is a candidate too, so a
+     * column keeps a candidate alive exactly when some state of its closure
+     * has an edge on that column straight into a candidate. Counts of such
+     * edges per state and column, and of such states per closure and
+     * column, are kept up to date as candidates are dropped, so each edge
+     * is taken back once and the work is linear for an NFA without epsilon
+     * transitions.
+     *
+     * @return the universal states as a bit set, or an empty array if there
+     *         are none
+     */
+    private long[] findUniversal() {
+        int n = names.length;
+        int rows = n * columnCount;
+        int[] epsSources = new int[epsTargets.length];
+        int[] epsSourceIndex = invert(epsIndex, epsTargets, n, epsSources);
+        int[] edgeRows = new int[deltaTargets.length];
+        int[] edgeRowIndex = invert(deltaIndex, deltaTargets, rows, edgeRows);
+        StateSet reached = new StateSet(n);
+        int[] stack = new int[n];
+
+        // The candidates are the states that reach a final state by epsilon edges
+        long[] candidates = new long[finals.length];
+        for (int q = 0; q < n; q++) {
+            if (isFinal(q)) {
+                closeBackward(q, reached, stack, epsSourceIndex, epsSources);
+            }
+        }
+        for (int k = 0; k < reached.size; k++) {
+            int q = reached.dense[k];
+            candidates[q >>> 6] |= 1L << q;
+        }
+
+        // live[p, c] counts the edges of p on c into a candidate, and
+        // alive[q, c] the states of the closure of q with live[p, c] > 0
+        int[] live = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            for (int i = deltaIndex[row], end = deltaIndex[row + 1]; i < end; i++) {
+                int t = deltaTargets[i];
+                if ((candidates[t >>> 6] & (1L << t)) != 0) {
+                    live[row]++;
+                }
+            }
+        }
+        int[] alive = new int[rows];
+        int[] dropped = new int[n];
+        int top = 0;
+        long[] queued = new long[finals.length];
+        for (int q = 0; q < n; q++) {
+            if ((candidates[q >>> 6] & (1L << q)) == 0) {
+                continue;
+            }
+            reached.clear();
+            close(q, reached, stack);
+            for (int column = 0; column < columnCount; column++) {
+                for (int k = 0; k < reached.size; k++) {
+                    if (live[reached.dense[k] * columnCount + column] > 0) {
+                        alive[q * columnCount + column]++;
+                    }
+                }
+                if (alive[q * columnCount + column] == 0 && (queued[q >>> 6] & (1L << q)) == 0) {
+                    queued[q >>> 6] |= 1L << q;
+                    dropped[top++] = q;
+                }
+            }
+        }
+
+        while (top > 0) {
+            int q = dropped[--top];
+            candidates[q >>> 6] &= ~(1L << q);
+            for (int i = edgeRowIndex[q], end = edgeRowIndex[q + 1]; i < end; i++) {
+                int row = edgeRows[i];
+                if (--live[row] > 0) {
+                    continue;
+                }
+                int column = row % columnCount;
+                reached.clear();
+                closeBackward(row / columnCount, reached, stack, epsSourceIndex, epsSources);
+                for (int k = 0; k < reached.size; k++) {
+                    int r = reached.dense[k];
+                    if (--alive[r * columnCount + column] == 0
+                            && (candidates[r >>> 6] & (1L << r)) != 0
+                            && (queued[r >>> 6] & (1L << r)) == 0) {
+                        queued[r >>> 6] |= 1L << r;
+                        dropped[top++] = r;
+                    }
+                }
+            }
+        }
+
+        for (long word : candidates) {
+            if (word != 0) {
+                return candidates;
+            }
+        }
+        return new long[0];
+    }
+
+    /**
+     * Inverts a CSR table: for each target, lists the rows that hold it.
+     *
+     * @param index the start of each row in targets
+     * @param targets the targets laid out by row
+     * @param rows the number of rows
+     * @param sources filled with the rows, laid out by target
+     * @return the start of each target's rows in sources
+     */
+    private int[] invert(int[] index, int[] targets, int rows, int[] sources) {
+        int n = names.length;
+        int[] inverse = new int[n + 1];
+        for (int t : targets) {
+            inverse[t + 1]++;
+        }
+        for (int q = 0; q < n; q++) {
+            inverse[q + 1] += inverse[q];
+        }
+        int[] next = Arrays.copyOf(inverse, n);
+        for (int row = 0; row < rows; row++) {
+            for (int i = index[row], end = index[row + 1]; i < end; i++) {
+                sources[next[targets[i]]++] = row;
+            }
+        }
+        return inverse;
+    }
+
+    /**
+     * Adds a state and every state whose epsilon closure holds it to a set.
+     */
+    private static void closeBackward(int id, StateSet set, int[] stack, int[] sourceIndex, int[] sources) {
+        if (!set.add(id)) {
+            return;
+        }
+        int top = 0;
+        stack[top++] = id;
+        while (top > 0) {
+            int q = stack[--top];
+            for (int i = sourceIndex[q], end = sourceIndex[q + 1]; i < end; i++) {
+                if (set.add(sources[i])) {
+                    stack[top++] = sources[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if any state of a set is in a bit set of states.
+     *
+     * @param bits the states as a bit set indexed by id
+     * @param set the active states
+     * @return true if the two share a state
+     */
+    static boolean anyIn(long[] bits, StateSet set) {
+        for (int k = 0; k < set.size; k++) {
+            int id = set.dense[k];
+            if ((bits[id >>> 6] & (1L << id)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a state is final.
+     *
+     * @param id the state id
+     * @return true if the state is final
+     */
+    boolean isFinal(int id) {
+        return (finals[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Checks if any state of a set is final.
+     *
+     * @param set the active states
+     * @return true if the set contains a final state
+     */
+    boolean anyFinal(StateSet set) {
+        for (int k = 0; k < set.size; k++) {
+            if (isFinal(set.dense[k])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
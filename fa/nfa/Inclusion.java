@@ -0,0 +1,413 @@
+package fa.nfa;
+
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks whether the language of one {@link CompiledNFA} is contained in that
+ * of another without determinizing either. The search runs over pairs
+ * (p, S) of a single state p of the first NFA and a set S of states of the
+ * second, such that some input leads the first NFA to p and the second to
+ * exactly S. The first language escapes the second when some pair has a
+ * final p and no final state in S.
+ *
+ * Three pruning rules keep the search small:
+ * <ul>
+ * <li>A pair (p, S) is subsumed by a pair (p, T) with T a subset of S, since
+ * every input that (p, S) fails to reject on the second side, (p, T) fails
+ * on too. Only the minimal sets for each p are kept, which is an antichain.</li>
+ * <li>A pair whose S holds a universal state of the second NFA can be
+ * dropped when every character the first NFA reads is in the second's
+ * alphabet, since the second then accepts every continuation.</li>
+ * <li>A pair (p, S) can be dropped when S holds a state q that simulates p:
+ * q is final if p is, and every move of p on a letter can be answered by a
+ * move of q to a state that again simulates p's target. Then q accepts
+ * every continuation p does. The largest such relation is computed first
+ * when the product of the state counts is small enough.</li>
+ * </ul>
+ * Both NFAs are read on the common refinement of their columns, so each
+ * step handles a whole class of characters that both treat alike.
+ */
+final class Inclusion {
+    private static final long SIMULATION_LIMIT = 1L << 18;
+
+    private final CompiledNFA a;
+    private final CompiledNFA b;
+    private final int[] columnsA;
+    private final int[] columnsB;
+    private final long[] universalB;
+    private long[][] simulatedBy;
+    private int[] classA;
+    private int[] classB;
+
+    private final List<List<long[]>> antichains;
+    private final Deque<Integer> pendingStates = new ArrayDeque<>();
+    private final Deque<long[]> pendingSets = new ArrayDeque<>();
+
+    private final StateSet single;
+    private final StateSet successors;
+    private final int[] stackA;
+    private final StateSet from;
+    private final StateSet to;
+    private final int[] stackB;
+
+    /**
+     * Prepares a check of whether the language of a is a subset of that of b.
+     *
+     * @param a the NFA whose language should be contained
+     * @param b the NFA whose language should contain it
+     */
+    Inclusion(CompiledNFA a, CompiledNFA b) {
+        this.a = a;
+        this.b = b;
+
+        // The characters a reads, cut at every range boundary of either NFA;
+        // each distinct pair of columns is one letter of the search
+        ColumnMap ca = a.columns;
+        ColumnMap cb = b.columns;
+        int rangeCount = ca.rangeCount() + cb.rangeCount();
+        char[] lows = new char[rangeCount];
+        char[] highs = new char[rangeCount];
+        for (int r = 0; r < ca.rangeCount(); r++) {
+            lows[r] = ca.rangeStart(r);
+            highs[r] = ca.rangeEnd(r);
+        }
+        for (int r = 0; r < cb.rangeCount(); r++) {
+            lows[ca.rangeCount() + r] = cb.rangeStart(r);
+            highs[ca.rangeCount() + r] = cb.rangeEnd(r);
+        }
+        ColumnMap pieces = ColumnMap.of(new char[0], lows, highs, rangeCount);
+        long[] pairs = new long[pieces.rangeCount()];
+        int letters = 0;
+        boolean closed = true;
+        for (int r = 0; r < pieces.rangeCount(); r++) {
+            int columnA = ca.columnOf(pieces.rangeStart(r));
+            if (columnA >= 0) {
+                int columnB = cb.columnOf(pieces.rangeStart(r));
+                closed &= columnB >= 0;
+                pairs[letters++] = ((long) columnA << 32) | (columnB & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(pairs, 0, letters);
+        int distinct = 0;
+        for (int i = 0; i < letters; i++) {
+            if (distinct == 0 || pairs[i] != pairs[distinct - 1]) {
+                pairs[distinct++] = pairs[i];
+            }
+        }
+        columnsA = new int[distinct];
+        columnsB = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            columnsA[i] = (int) (pairs[i] >>> 32);
+            columnsB[i] = (int) pairs[i];
+        }
+        universalB = closed ? b.universal() : null;
+
+        int n = a.getStateCount();
+        antichains = new ArrayList<>(n);
+        for (int p = 0; p < n; p++) {
+            antichains.add(new ArrayList<>());
+        }
+        single = new StateSet(n);
+        successors = new StateSet(n);
+        stackA = new int[n];
+        from = new StateSet(b.getStateCount());
+        to = new StateSet(b.getStateCount());
+        stackB = new int[b.getStateCount()];
+        int[][][] movesA = moves(a, columnsA, single, successors, stackA);
+        int[][][] movesB = moves(b, columnsB, from, to, stackB);
+        if ((long) n * b.getStateCount() <= SIMULATION_LIMIT) {
+            simulatedBy = simulation(movesA, movesB);
+        } else {
+            bisimulation(movesA, movesB);
+        }
+    }
+
+    /**
+     * Lists the moves of every state of an NFA on every letter, each move
+     * followed by the epsilon closure of its target.
+     */
+    private static int[][][] moves(CompiledNFA nfa, int[] columns, StateSet single, StateSet to, int[] stack) {
+        int[][][] moves = new int[nfa.getStateCount()][columns.length][];
+        for (int q = 0; q < moves.length; q++) {
+            single.clear();
+            single.add(q);
+            for (int letter = 0; letter < columns.length; letter++) {
+                if (columns[letter] < 0) {
+                    moves[q][letter] = new int[0];
+                    continue;
+                }
+                nfa.step(single, columns[letter], to, stack);
+                moves[q][letter] = Arrays.copyOf(to.dense, to.size);
+            }
+        }
+        single.clear();
+        to.clear();
+        return moves;
+    }
+
+    /**
+     * Computes the largest simulation of the states of a by those of b, by
+     * starting from every pair that agrees on finality and removing pairs
+     * until every move of the a state is answered.
+     *
+     * @return for each state of a, the states of b that simulate it
+     */
+    private long[][] simulation(int[][][] movesA, int[][][] movesB) {
+        int n = a.getStateCount();
+        int m = b.getStateCount();
+        int words = (m + 63) >>> 6;
+        long[][] relation = new long[n][words];
+        for (int p = 0; p < n; p++) {
+            for (int q = 0; q < m; q++) {
+                if (!a.isFinal(p) || b.isFinal(q)) {
+                    relation[p][q >>> 6] |= 1L << q;
+                }
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < n; p++) {
+                long[] row = relation[p];
+                for (int w = 0; w < words; w++) {
+                    for (long bits = row[w]; bits != 0; bits &= bits - 1) {
+                        int q = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        if (!answers(movesA[p], movesB[q], relation)) {
+                            row[w] &= ~(1L << q);
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+        return relation;
+    }
+
+    /**
+     * Checks that every move of an a state is matched by a move of a b state
+     * to a state that simulates the target.
+     */
+    private static boolean answers(int[][] movesA, int[][] movesB, long[][] relation) {
+        for (int letter = 0; letter < movesA.length; letter++) {
+            for (int target : movesA[letter]) {
+                boolean answered = false;
+                for (int q : movesB[letter]) {
+                    if ((relation[target][q >>> 6] & (1L << q)) != 0) {
+                        answered = true;
+                        break;
+                    }
+                }
+                if (!answered) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Groups the states of both NFAs into bisimulation classes, a cheaper
+     * stand-in for the simulation when there are too many pairs of states.
+     * States start out split by finality, and each round splits them by
+     * their class and the classes their moves reach on each letter, until a
+     * round splits nothing. States in one class accept the same inputs.
+     */
+    private void bisimulation(int[][][] movesA, int[][][] movesB) {
+        int n = movesA.length;
+        int total = n + movesB.length;
+        int[] classes = new int[total];
+        for (int s = 0; s < total; s++) {
+            classes[s] = (s < n ? a.isFinal(s) : b.isFinal(s - n)) ? 1 : 0;
+        }
+        int count = 0;
+        int[] signature = new int[16];
+        while (true) {
+            // A signature is the class, then each letter's sorted target
+            // classes, each list ended by -1; an IntBuffer over it compares
+            // by content
+            Map<IntBuffer, Integer> ids = new HashMap<>();
+            int[] next = new int[total];
+            for (int s = 0; s < total; s++) {
+                int[][] moves = s < n ? movesA[s] : movesB[s - n];
+                int offset = s < n ? 0 : n;
+                int length = 1;
+                for (int[] targets : moves) {
+                    length += targets.length + 1;
+                }
+                if (signature.length < length) {
+                    signature = new int[Math.max(length, signature.length * 2)];
+                }
+                signature[0] = classes[s];
+                int end = 1;
+                for (int[] targets : moves) {
+                    int begin = end;
+                    for (int t : targets) {
+                        signature[end++] = classes[offset + t];
+                    }
+                    Arrays.sort(signature, begin, end);
+                    int distinct = begin;
+                    for (int i = begin; i < end; i++) {
+                        if (distinct == begin || signature[i] != signature[distinct - 1]) {
+                            signature[distinct++] = signature[i];
+                        }
+                    }
+                    end = distinct;
+                    signature[end++] = -1;
+                }
+                IntBuffer key = IntBuffer.wrap(Arrays.copyOf(signature, end));
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(key, id);
+                }
+                next[s] = id;
+            }
+            classes = next;
+            if (ids.size() == count) {
+                break;
+            }
+            count = ids.size();
+        }
+        classA = Arrays.copyOf(classes, n);
+        classB = Arrays.copyOfRange(classes, n, total);
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @return true if every input accepted by a is accepted by b
+     */
+    boolean holds() {
+        if (a == b || a.start < 0) {
+            return true;
+        }
+        from.clear();
+        if (b.start >= 0) {
+            b.close(b.start, from, stackB);
+        }
+        long[] startB = from.bits.clone();
+        successors.clear();
+        a.close(a.start, successors, stackA);
+        for (int k = 0; k < successors.size; k++) {
+            if (!add(successors.dense[k], startB)) {
+                return false;
+            }
+        }
+
+        while (!pendingStates.isEmpty()) {
+            int p = pendingStates.poll();
+            long[] set = pendingSets.poll();
+            if (!antichains.get(p).contains(set)) {
+                // Replaced by a smaller set since it was queued
+                continue;
+            }
+            single.clear();
+            single.add(p);
+            for (int letter = 0; letter < columnsA.length; letter++) {
+                a.step(single, columnsA[letter], successors, stackA);
+                if (successors.size == 0) {
+                    continue;
+                }
+                long[] next = stepB(set, columnsB[letter]);
+                for (int k = 0; k < successors.size; k++) {
+                    if (!add(successors.dense[k], next)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the states of b reached from a set on one column.
+     */
+    private long[] stepB(long[] set, int column) {
+        if (column < 0) {
+            return new long[set.length];
+        }
+        from.clear();
+        for (int w = 0; w < set.length; w++) {
+            for (long bits = set[w]; bits != 0; bits &= bits - 1) {
+                from.add((w << 6) + Long.numberOfTrailingZeros(bits));
+            }
+        }
+        b.step(from, column, to, stackB);
+        return to.bits.clone();
+    }
+
+    /**
+     * Records a pair unless a kept pair subsumes it.
+     *
+     * @return false if the pair shows an input accepted by a and not by b
+     */
+    private boolean add(int p, long[] set) {
+        boolean acceptedByB = false;
+        for (int w = 0; w < set.length; w++) {
+            if ((set[w] & b.finals[w]) != 0) {
+                acceptedByB = true;
+                break;
+            }
+        }
+        if (a.isFinal(p) && !acceptedByB) {
+            return false;
+        }
+        if (universalB != null && intersects(set, universalB)) {
+            return true;
+        }
+        if (simulatedBy != null ? intersects(set, simulatedBy[p]) : anyInClass(set, classA[p])) {
+            return true;
+        }
+        List<long[]> kept = antichains.get(p);
+        for (long[] other : kept) {
+            if (isSubset(other, set)) {
+                return true;
+            }
+        }
+        kept.removeIf(other -> isSubset(set, other));
+        kept.add(set);
+        pendingStates.add(p);
+        pendingSets.add(set);
+        return true;
+    }
+
+    /**
+     * Checks whether a set of states of b holds one in a given bisimulation
+     * class.
+     */
+    private boolean anyInClass(long[] set, int cls) {
+        for (int w = 0; w < set.length; w++) {
+            for (long bits = set[w]; bits != 0; bits &= bits - 1) {
+                if (classB[(w << 6) + Long.numberOfTrailingZeros(bits)] == cls) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSubset(long[] x, long[] y) {
+        for (int w = 0; w < x.length; w++) {
+            if ((x[w] & ~y[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean intersects(long[] x, long[] y) {
+        for (int w = 0; w < x.length; w++) {
+            if ((x[w] & y[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
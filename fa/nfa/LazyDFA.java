@@ -0,0 +1,220 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Matches input against a {@link CompiledNFA} by determinizing it on the fly.
+ * Each distinct set of active NFA states met while matching becomes a cached
+ * DFA state, and its transitions are filled in the first time they are taken,
+ * so repeated inputs cost one table lookup per character.
+ *
+ * The cache holds at most a fixed number of DFA states. When it is full it is
+ * flushed and refilled from the current set of active states, so memory stays
+ * bounded even for automata whose subset construction blows up.
+ *
+ * Matching stops as soon as the input is rejected, and as soon as a DFA state
+ * holding a universal NFA state is reached, after which only the rest of the
+ * input's characters are looked up.
+ *
+ * A LazyDFA is not safe for concurrent use; each thread needs its own.
+ */
+public final class LazyDFA {
+    private static final int UNKNOWN = -2;
+    private static final int DEAD = -1;
+
+    private final CompiledNFA nfa;
+    private final int maxStates;
+    private final int columnCount;
+    private final long[] universalStates;
+
+    private final Map<Key, Integer> ids = new HashMap<>();
+    private int[][] members;
+    private boolean[] accepting;
+    private boolean[] universal;
+    private int[] table;
+    private int count;
+    private int startId = UNKNOWN;
+    private int flushes;
+
+    private final StateSet from;
+    private final StateSet to;
+    private final int[] stack;
+
+    /**
+     * Creates a lazily determinized matcher.
+     *
+     * @param nfa the compiled NFA to match with
+     * @param maxStates the most DFA states to keep cached at once
+     */
+    public LazyDFA(CompiledNFA nfa, int maxStates) {
+        if (maxStates < 1) {
+            throw new IllegalArgumentException("maxStates must be positive: " + maxStates);
+        }
+        this.nfa = nfa;
+        this.maxStates = maxStates;
+        this.columnCount = nfa.columnCount;
+        this.universalStates = nfa.universal();
+        this.from = new StateSet(nfa.getStateCount());
+        this.to = new StateSet(nfa.getStateCount());
+        this.stack = new int[nfa.getStateCount()];
+        allocate(Math.min(maxStates, 16));
+    }
+
+    /**
+     * Checks if the NFA accepts a string.
+     *
+     * @param s the input string to check
+     * @return true if the input string is accepted, false otherwise
+     */
+    public boolean accepts(String s) {
+        if (nfa.start < 0) {
+            return false;
+        }
+        int state = startState();
+        for (int i = 0; i < s.length(); i++) {
+            if (universal[state]) {
+                return nfa.columns.covers(s, i);
+            }
+            int column = nfa.columns.columnOf(s.charAt(i));
+            if (column < 0) {
+                return false;
+            }
+            int next = table[state * columnCount + column];
+            if (next == UNKNOWN) {
+                next = computeTransition(state, column);
+            }
+            if (next == DEAD) {
+                return false;
+            }
+            state = next;
+        }
+        return accepting[state];
+    }
+
+    /**
+     * Gets the number of DFA states currently cached.
+     *
+     * @return the cached state count
+     */
+    public int getCachedStateCount() {
+        return count;
+    }
+
+    /**
+     * Gets how many times the cache has been flushed because it was full.
+     *
+     * @return the flush count
+     */
+    public int getFlushCount() {
+        return flushes;
+    }
+
+    /**
+     * Gets the DFA state for the epsilon closure of the start state.
+     */
+    private int startState() {
+        if (startId == UNKNOWN) {
+            to.clear();
+            nfa.close(nfa.start, to, stack);
+            startId = intern();
+        }
+        return startId;
+    }
+
+    /**
+     * Computes and caches the transition of a DFA state on a column.
+     *
+     * @return the target DFA state, which is valid even if the cache was
+     *         flushed to make room for it, or DEAD for the empty set
+     */
+    private int computeTransition(int state, int column) {
+        from.clear();
+        for (int id : members[state]) {
+            from.add(id);
+        }
+        nfa.step(from, column, to, stack);
+        if (to.size == 0) {
+            table[state * columnCount + column] = DEAD;
+            return DEAD;
+        }
+
+        int flushesBefore = flushes;
+        int next = intern();
+        if (flushes == flushesBefore) {
+            table[state * columnCount + column] = next;
+        }
+        return next;
+    }
+
+    /**
+     * Looks up the DFA state for the NFA states in {@code to}, adding it
+     * (and flushing the cache first if it is full) when it is new.
+     */
+    private int intern() {
+        int[] set = Arrays.copyOf(to.dense, to.size);
+        Arrays.sort(set);
+        Key key = new Key(set);
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+
+        if (count == maxStates) {
+            flush();
+        }
+        if (count == members.length) {
+            allocate(Math.min(maxStates, count * 2));
+        }
+        members[count] = set;
+        accepting[count] = nfa.anyFinal(to);
+        universal[count] = universalStates != null && CompiledNFA.anyIn(universalStates, to);
+        Arrays.fill(table, count * columnCount, (count + 1) * columnCount, UNKNOWN);
+        ids.put(key, count);
+        return count++;
+    }
+
+    /**
+     * Drops every cached DFA state.
+     */
+    private void flush() {
+        ids.clear();
+        count = 0;
+        startId = UNKNOWN;
+        flushes++;
+    }
+
+    /**
+     * Grows the per-state arrays to the given number of DFA states.
+     */
+    private void allocate(int capacity) {
+        members = members == null ? new int[capacity][] : Arrays.copyOf(members, capacity);
+        accepting = accepting == null ? new boolean[capacity] : Arrays.copyOf(accepting, capacity);
+        universal = universal == null ? new boolean[capacity] : Arrays.copyOf(universal, capacity);
+        table = table == null ? new int[capacity * columnCount] : Arrays.copyOf(table, capacity * columnCount);
+    }
+
+    /**
+     * A sorted set of NFA state ids usable as a map key.
+     */
+    private static final class Key {
+        private final int[] set;
+        private final int hash;
+
+        Key(int[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(set, ((Key) obj).set);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compiled NFA matched directly against a memory-mapped file written by
+ * {@link CompiledNFA#save(Path)}. Only the small sigma table is copied onto
+ * the heap; the transition arrays are read straight from the mapping, so
+ * opening a large automaton costs little more than mapping the file and one
+ * pass over it to check that every count, offset and state is in range.
+ *
+ * The file is a sequence of little-endian 32-bit ints:
+ * <ol>
+ * <li>header: magic "NFA1", format version, state count, start state (-1 if
+ * none), column count, character range count, symbol edge count, epsilon
+ * edge count</li>
+ * <li>sigma table: (first char, last char, column) triples in ascending
+ * order</li>
+ * <li>symbol edges in CSR form: stateCount * columnCount + 1 row offsets
+ * followed by the target states</li>
+ * <li>epsilon edges in CSR form: stateCount + 1 row offsets followed by the
+ * target states</li>
+ * <li>final states: a bitmap of (stateCount + 31) / 32 words</li>
+ * </ol>
+ * State names are not stored.
+ *
+ * The mapping is only read with absolute gets and the scratch space of
+ * {@link #accepts} is kept per thread, so one instance can be shared by any
+ * number of threads.
+ */
+public final class MappedNFA {
+    static final int MAGIC = 0x4E464131;
+    static final int VERSION = 2;
+    static final int HEADER_INTS = 8;
+
+    private final IntBuffer data;
+    private final int stateCount;
+    private final int start;
+    private final int columnCount;
+    private final ColumnMap columns;
+    private final int deltaIndex;
+    private final int deltaTargets;
+    private final int epsIndex;
+    private final int epsTargets;
+    private final int finals;
+
+    /**
+     * Wraps the mapped ints after the magic and version have been checked.
+     * Every count is checked against the file size before anything is
+     * allocated, and every range, row offset and state against its bounds.
+     */
+    private MappedNFA(IntBuffer data) throws IOException {
+        this.data = data;
+        stateCount = data.get(2);
+        start = data.get(3);
+        columnCount = data.get(4);
+        int rangeCount = data.get(5);
+        int edgeCount = data.get(6);
+        int epsCount = data.get(7);
+        if (stateCount < 0 || columnCount < 0 || rangeCount < 0 || edgeCount < 0 || epsCount < 0) {
+            throw new IOException("negative count in NFA file header");
+        }
+        if (start < -1 || start >= stateCount) {
+            throw new IOException("start state " + start + " out of range in NFA file");
+        }
+        long size = HEADER_INTS + 3L * rangeCount + (long) stateCount * columnCount + 1
+                + edgeCount + stateCount + 1 + epsCount + ((stateCount + 31L) >>> 5);
+        if (size != data.limit()) {
+            throw new IOException("NFA file size does not match its header");
+        }
+
+        char[] starts = new char[rangeCount];
+        char[] ends = new char[rangeCount];
+        int[] rangeColumns = new int[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            starts[i] = (char) data.get(HEADER_INTS + 3 * i);
+            ends[i] = (char) data.get(HEADER_INTS + 3 * i + 1);
+            rangeColumns[i] = data.get(HEADER_INTS + 3 * i + 2);
+            int previousEnd = i == 0 ? -1 : ends[i - 1];
+            if (data.get(HEADER_INTS + 3 * i) != starts[i] || data.get(HEADER_INTS + 3 * i + 1) != ends[i]
+                    || starts[i] <= previousEnd || ends[i] < starts[i]
+                    || rangeColumns[i] < 0 || rangeColumns[i] >= columnCount) {
+                throw new IOException("malformed sigma table in NFA file at range " + i);
+            }
+        }
+        columns = new ColumnMap(starts, ends, rangeColumns, columnCount);
+
+        deltaIndex = HEADER_INTS + 3 * rangeCount;
+        deltaTargets = deltaIndex + stateCount * columnCount + 1;
+        epsIndex = deltaTargets + edgeCount;
+        epsTargets = epsIndex + stateCount + 1;
+        finals = epsTargets + epsCount;
+        checkEdges(deltaIndex, stateCount * columnCount, deltaTargets, edgeCount);
+        checkEdges(epsIndex, stateCount, epsTargets, epsCount);
+    }
+
+    /**
+     * Checks that a CSR table's row offsets run from 0 up to its edge count
+     * without decreasing and that every target is a state.
+     */
+    private void checkEdges(int index, int rows, int targets, int count) throws IOException {
+        int previous = 0;
+        for (int row = 0; row <= rows; row++) {
+            int offset = data.get(index + row);
+            if (offset < previous || offset > count || (row == 0 && offset != 0)) {
+                throw new IOException("malformed row offset in NFA file at int " + (index + row));
+            }
+            previous = offset;
+        }
+        if (previous != count) {
+            throw new IOException("row offsets do not match the edge count in NFA file");
+        }
+        for (int i = 0; i < count; i++) {
+            int target = data.get(targets + i);
+            if (target < 0 || target >= stateCount) {
+                throw new IOException("state " + target + " out of range in NFA file");
+            }
+        }
+    }
+
+    /**
+     * Maps a file written by {@link CompiledNFA#save(Path)}.
+     *
+     * @param path the file to map
+     * @return the mapped NFA
+     * @throws IOException if the file cannot be mapped or is not in the expected format
+     */
+    public static MappedNFA open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        IntBuffer data = buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        if (data.limit() < HEADER_INTS || data.get(0) != MAGIC) {
+            throw new IOException("not a compiled NFA file: " + path);
+        }
+        if (data.get(1) != VERSION) {
+            throw new IOException("unsupported NFA file version " + data.get(1));
+        }
+        return new MappedNFA(data);
+    }
+
+    /**
+     * Gets the number of states.
+     *
+     * @return the state count
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Checks if the mapped NFA accepts a string. The state sets are the
+     * calling thread's scratch space, so this does not allocate once the
+     * thread has simulated an automaton at least this large.
+     *
+     * @param s the input string to check
+     * @return true if the input string is accepted, false otherwise
+     */
+    public boolean accepts(String s) {
+        if (start < 0) {
+            return false;
+        }
+
+        Scratch scratch = Scratch.forThread(stateCount);
+        StateSet current = scratch.current;
+        StateSet next = scratch.next;
+        int[] stack = scratch.stack;
+
+        current.clear();
+        close(start, current, stack);
+        for (int i = 0; i < s.length(); i++) {
+            int column = columns.columnOf(s.charAt(i));
+            if (column < 0) {
+                return false;
+            }
+
+            next.clear();
+            for (int k = 0; k < current.size; k++) {
+                int row = deltaIndex + current.dense[k] * columnCount + column;
+                for (int j = data.get(row), end = data.get(row + 1); j < end; j++) {
+                    close(data.get(deltaTargets + j), next, stack);
+                }
+            }
+
+            StateSet swap = current;
+            current = next;
+            next = swap;
+            if (current.size == 0) {
+                return false;
+            }
+        }
+
+        for (int k = 0; k < current.size; k++) {
+            int id = current.dense[k];
+            if ((data.get(finals + (id >>> 5)) & (1 << id)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a state and its epsilon closure to a set, as in
+     * {@link CompiledNFA#close(int, StateSet, int[])}.
+     */
+    private void close(int id, StateSet set, int[] stack) {
+        if (!set.add(id)) {
+            return;
+        }
+        int top = 0;
+        stack[top++] = id;
+        while (top > 0) {
+            int q = stack[--top];
+            for (int i = data.get(epsIndex + q), end = data.get(epsIndex + q + 1); i < end; i++) {
+                int to = data.get(epsTargets + i);
+                if (set.add(to)) {
+                    stack[top++] = to;
+                }
+            }
+        }
+    }
+}
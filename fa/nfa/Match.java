@@ -0,0 +1,61 @@
+package fa.nfa;
+
+/**
+ * A span of an input that an NFA accepts, from a start index (inclusive) to
+ * an end index (exclusive), as reported by {@link CompiledNFA#find}.
+ */
+public final class Match {
+    private final int start;
+    private final int end;
+
+    /**
+     * Constructs a match covering the given span.
+     *
+     * @param start the index of the first matched character
+     * @param end the index after the last matched character
+     */
+    Match(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Gets the index of the first matched character.
+     *
+     * @return start
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the index after the last matched character.
+     *
+     * @return end
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Match)) {
+            return false;
+        }
+        Match other = (Match) obj;
+        return start == other.start && end == other.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start + end;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ")";
+    }
+}
@@ -1,27 +1,61 @@
 package fa.nfa;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import fa.dfa.DFA;
 
 /**
  * This class represents a Non-deterministic Finite Automaton or NFA. It implements
  * the NFAInterface and provides methods for state transitions, epsilon closures,
  * and checking if a given input string is accepted by the NFA.
+ *
+ * Once an NFA is built, {@link #accepts}, {@link #maxCopies}, {@link #eClosure}
+ * and the other read-only methods are safe to call from many threads at once:
+ * matching keeps no state in the NFA or its NFAState objects, and the cached
+ * compiled form and epsilon closures are immutable once published. Methods
+ * that modify the NFA must not run concurrently with any other call.
  */
 public class NFA implements NFAInterface{
-    private Set<NFAState> states;
+    private Map<String, NFAState> states;
     private Set<Character> sigma;
-    private Set<NFAState> finalStates;
     private NFAState startState;
+    private volatile CompiledNFA compiled;
+    private volatile Map<NFAState, Set<NFAState>> closures;
 
     /**
      * Constructs an empty NFA with no states, symbols, or final states.
      */
     public NFA() {
-        states = new HashSet<>();
+        states = new LinkedHashMap<>();
         sigma = new HashSet<>();
-        finalStates = new HashSet<>();
+    }
+
+    /**
+     * Constructs an NFA from states that already carry their transitions and
+     * final flags, as produced by {@link NFABuilder}.
+     *
+     * @param states the states keyed by name
+     * @param sigma the alphabet
+     * @param startState the start state, or null
+     */
+    NFA(Map<String, NFAState> states, Set<Character> sigma, NFAState startState) {
+        this.states = states;
+        this.sigma = sigma;
+        this.startState = startState;
     }
 
      /**
@@ -38,32 +72,159 @@ public class NFA implements NFAInterface{
 
      /**
      * Computes the epsilon closure of the given state, which includes all states
-     * reachable from the initial state via epsilon transitions.
+     * reachable from the initial state via epsilon transitions. Closures of all
+     * states are computed together the first time one is needed and cached
+     * until an epsilon transition is added.
      *
      * @param s the state from which to compute epsilon closure
-     * @return a set of states in the epsilon closure of the given state
+     * @return an unmodifiable set of states in the epsilon closure of the given state
      */
     @Override
     public Set<NFAState> eClosure(NFAState s) {
+        Map<NFAState, Set<NFAState>> cache = closures;
+        if (cache == null) {
+            cache = computeClosures();
+            closures = cache;
+        }
+        Set<NFAState> closure = cache.get(s);
+        if (closure == null) {
+            // Not a state of this NFA, so it is not in the cache
+            return Collections.unmodifiableSet(searchClosure(s));
+        }
+        return closure;
+    }
+
+    /**
+     * Computes the epsilon closure of every state at once. The epsilon graph is
+     * condensed into strongly connected components with Tarjan's algorithm;
+     * all states of a component share one closure, which is the component
+     * itself plus the closures of the components it has epsilon edges to.
+     * Tarjan's algorithm finishes those components first, so each closure is
+     * built from already computed ones.
+     *
+     * @return the closure of each state
+     */
+    private Map<NFAState, Set<NFAState>> computeClosures() {
+        NFAState[] byId = states.values().toArray(new NFAState[0]);
+        int n = byId.length;
+        Map<NFAState, Integer> ids = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            ids.put(byId[i], i);
+        }
+        int[][] eps = new int[n][];
+        for (int i = 0; i < n; i++) {
+            Set<NFAState> targets = byId[i].transitions.get('e');
+            eps[i] = new int[targets == null ? 0 : targets.size()];
+            int k = 0;
+            if (targets != null) {
+                for (NFAState to : targets) {
+                    eps[i][k++] = ids.get(to);
+                }
+            }
+        }
+
+        List<Set<NFAState>> closureOf = new ArrayList<>(Collections.nCopies(n, null));
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] sccStack = new int[n];
+        int[] callStack = new int[n];
+        int[] edgePos = new int[n];
+        int sccTop = 0;
+        int counter = 0;
+        Arrays.fill(index, -1);
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth] = root;
+            edgePos[root] = 0;
+            index[root] = low[root] = counter++;
+            sccStack[sccTop++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = callStack[depth];
+                if (edgePos[v] < eps[v].length) {
+                    int w = eps[v][edgePos[v]++];
+                    if (index[w] < 0) {
+                        // Descends into w
+                        index[w] = low[w] = counter++;
+                        edgePos[w] = 0;
+                        sccStack[sccTop++] = w;
+                        onStack[w] = true;
+                        callStack[++depth] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                // All edges of v are done, so v may be the root of a component
+                if (low[v] == index[v]) {
+                    int first = sccTop;
+                    do {
+                        first--;
+                        onStack[sccStack[first]] = false;
+                    } while (sccStack[first] != v);
+
+                    Set<NFAState> closure = new HashSet<>();
+                    for (int i = first; i < sccTop; i++) {
+                        closure.add(byId[sccStack[i]]);
+                    }
+                    for (int i = first; i < sccTop; i++) {
+                        for (int w : eps[sccStack[i]]) {
+                            if (closureOf.get(w) != null) {
+                                closure.addAll(closureOf.get(w));
+                            }
+                        }
+                    }
+                    Set<NFAState> shared = Collections.unmodifiableSet(closure);
+                    for (int i = first; i < sccTop; i++) {
+                        closureOf.set(sccStack[i], shared);
+                    }
+                    sccTop = first;
+                }
+
+                depth--;
+                if (depth >= 0) {
+                    int parent = callStack[depth];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+
+        Map<NFAState, Set<NFAState>> result = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            result.put(byId[i], closureOf.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the epsilon closure of a single state with a depth-first search.
+     *
+     * @param s the state from which to compute epsilon closure
+     * @return a set of states in the epsilon closure of the given state
+     */
+    private Set<NFAState> searchClosure(NFAState s) {
         Set<NFAState> eClosureStates = new HashSet<>();
         Stack<NFAState> stack = new Stack<>();
 
         eClosureStates.add(s); 
         stack.push(s); 
 
-        for (NFAState state : states) {
-            state.visited = false;
-        }
-
         while (!stack.isEmpty()) {
             NFAState currentState = stack.pop();
-            if (!currentState.visited) {
-                Set<NFAState> epsilonTransitions = currentState.toStates('e');
-                if (epsilonTransitions != null) {
-                    eClosureStates.addAll(epsilonTransitions);
-                    stack.addAll(epsilonTransitions);
+            Set<NFAState> epsilonTransitions = currentState.transitions.get('e');
+            if (epsilonTransitions != null) {
+                for (NFAState state : epsilonTransitions) {
+                    if (eClosureStates.add(state)) {
+                        stack.push(state);
+                    }
                 }
-                currentState.visited = true;
             }
         }
 
@@ -72,47 +233,15 @@ public class NFA implements NFAInterface{
 
     /**
      * Computes the max number of NFA states that can be active during
-     * the traversal of a given string.
+     * the traversal of a given string. The simulation runs on the compiled
+     * form of the NFA, see {@link CompiledNFA#maxCopies(String)}.
      *
      * @param s the input string
      * @return the maximum number of active states at any point during traversal
      */
     @Override
     public int maxCopies(String s) {
-        int maxCopies = 0;
-
-        Set<NFAState> currentStates = new HashSet<>();
-        Set<NFAState> nextStates = new HashSet<>();
-    
-        if (startState == null) {
-            return -1;  
-        }
-    
-        currentStates.add(startState);
-        currentStates.addAll(eClosure(startState));
-    
-        maxCopies = Math.max(maxCopies, currentStates.size());
-    
-        for (char symbol : s.toCharArray()) {
-            for (NFAState state : currentStates) {
-                Set<NFAState> transitions = state.toStates(symbol);
-                if (transitions != null) {
-                    nextStates.addAll(transitions);
-                }
-            }
-    
-            Set<NFAState> closureStates = new HashSet<>();
-            for (NFAState state : nextStates) {
-                closureStates.addAll(eClosure(state));
-            }
-    
-            currentStates.clear();
-            currentStates.addAll(closureStates);
-            maxCopies = Math.max(maxCopies, currentStates.size());
-    
-            nextStates.clear();
-        }
-        return maxCopies;
+        return compile().maxCopies(s);
     }
 
      /**
@@ -145,11 +274,52 @@ public class NFA implements NFAInterface{
             from.setTransition(onSymb, to);
         }
         addSigma(onSymb); 
+        compiled = null;
+        if (onSymb == 'e') {
+            closures = null;
+        }
         return true;
     }
 
     /**
-     * Checks if an NFA can also be a DFA.
+     * Adds a transition from a given state to a set of target states on every
+     * character from low to high, inclusive. The characters need not be in
+     * sigma; a single range transition replaces one transition per character
+     * and is matched by range lookup. A range is never an epsilon transition,
+     * even if it contains 'e'.
+     *
+     * @param fromState the name of the state from which the transition originates
+     * @param toStates the names of the target states to which the transition goes
+     * @param low the first character of the range
+     * @param high the last character of the range
+     * @return true if the transition was added successfully, false otherwise
+     */
+    public boolean addTransition(String fromState, Set<String> toStates, char low, char high) {
+        NFAState from = getState(fromState);
+        if (from == null || low > high) {
+            return false;
+        }
+
+        // Checks every target before adding any of them
+        List<NFAState> targets = new ArrayList<>(toStates.size());
+        for (String toStateName : toStates) {
+            NFAState to = getState(toStateName);
+            if (to == null) {
+                return false;
+            }
+            targets.add(to);
+        }
+        for (NFAState to : targets) {
+            from.setTransition(low, high, to);
+        }
+        compiled = null;
+        return true;
+    }
+
+    /**
+     * Checks if an NFA can also be a DFA: no state has an epsilon transition
+     * or more than one target on any character, whether from sigma or from
+     * a range transition.
      *
      * @return true if the NFA is a DFA
      */
@@ -159,15 +329,17 @@ public class NFA implements NFAInterface{
             return false; 
         }
     
-        for (NFAState state : states) {
+        ColumnMap columns = compile().columns;
+        for (NFAState state : states.values()) {
             // Checks for null state
             if (state == null) {
                 continue; 
             }
     
-            // Verifies each symbol in the alphabet
-            for (Character symbol : sigma) {
-                Set<NFAState> transitions = state.toStates(symbol);
+            // Verifies one character of each run that every state treats
+            // alike, which covers the symbols of sigma and every range
+            for (int i = 0; i < columns.rangeCount(); i++) {
+                Set<NFAState> transitions = state.toStates(columns.rangeStart(i));
                 
                 // If theres multiple transitions its not a DFA
                 if (transitions != null && transitions.size() > 1) {
@@ -176,7 +348,7 @@ public class NFA implements NFAInterface{
             }
     
             // Checks for epsilon transitions
-            if (state.toStates('e') != null) {
+            if (state.transitions.get('e') != null) {
                 return false; 
             }
         }
@@ -194,10 +366,17 @@ public class NFA implements NFAInterface{
      */
     @Override
     public boolean addState(String name) {
-        if (getState(name) != null) {
+        if (states.containsKey(name)) {
             return false; 
         }
-        states.add(new NFAState(name)); 
+        NFAState state = new NFAState(name);
+        states.put(name, state); 
+        compiled = null;
+        Map<NFAState, Set<NFAState>> cache = closures;
+        if (cache != null) {
+            // A new state has no epsilon transitions yet
+            cache.put(state, Collections.singleton(state));
+        }
         return true;
     }
 
@@ -213,7 +392,8 @@ public class NFA implements NFAInterface{
         if (state == null) {
             return false; 
         }
-        finalStates.add(state); 
+        state.setFinalState(true);
+        compiled = null;
         return true;
     }
 
@@ -225,14 +405,14 @@ public class NFA implements NFAInterface{
      */
     @Override
     public boolean setStart(String name) {
-        for (NFAState state : states) {
-            if (state.getName().equals(name)) {
-                state.setStartState(true);
-                startState = state; 
-                return true;
-            }
+        NFAState state = getState(name);
+        if (state == null) {
+            return false;
         }
-        return false;
+        state.setStartState(true);
+        startState = state; 
+        compiled = null;
+        return true;
     }
 
 
@@ -244,46 +424,458 @@ public class NFA implements NFAInterface{
     @Override
     public void addSigma(char symbol) {
         sigma.add(symbol);
+        compiled = null;
     }
 
      /**
-     * Checks if the NFA accepts a string.
+     * Checks if the NFA accepts a string. The simulation runs on the compiled
+     * form of the NFA, see {@link #compile()}.
      *
      * @param s the input string to check
      * @return true if the input string is accepted by the NFA, false otherwise
      */
     @Override
     public boolean accepts(String s) {
+        return compile().accepts(s);
+    }
+
+    /**
+     * Checks if the NFA accepts a string, reporting every step of the
+     * simulation to an observer, see
+     * {@link CompiledNFA#accepts(String, SimulationObserver)}.
+     *
+     * @param s the input string to check
+     * @param observer the observer of the simulation
+     * @return true if the input string is accepted by the NFA, false otherwise
+     */
+    public boolean accepts(String s, SimulationObserver observer) {
+        return compile().accepts(s, observer);
+    }
+
+    /**
+     * Finds the leftmost-longest span of a string that the NFA accepts, see
+     * {@link CompiledNFA#find(CharSequence, int)}.
+     *
+     * @param s the input to search
+     * @param from the first position a match may start at
+     * @return the match, or null if there is none
+     */
+    public Match find(CharSequence s, int from) {
+        return compile().find(s, from);
+    }
+
+    /**
+     * Finds every non-overlapping span of a string that the NFA accepts, see
+     * {@link CompiledNFA#findAll(CharSequence)}.
+     *
+     * @param s the input to search
+     * @return the matches in order
+     */
+    public List<Match> findAll(CharSequence s) {
+        return compile().findAll(s);
+    }
+
+    /**
+     * Checks whether every string this NFA accepts is also accepted by
+     * another NFA. The check explores pairs of a state of this NFA and an
+     * eClosure-based set of states of the other, keeping only the minimal
+     * sets for each state, so it avoids determinizing either automaton.
+     *
+     * @param other the NFA whose language should contain this one's
+     * @return true if the language of this NFA is a subset of the other's
+     */
+    public boolean isSubsetOf(NFA other) {
+        return compile().isSubsetOf(other.compile());
+    }
+
+    /**
+     * Checks whether this NFA and another accept exactly the same strings.
+     *
+     * @param other the NFA to compare with
+     * @return true if both languages are equal
+     */
+    public boolean isEquivalentTo(NFA other) {
+        return compile().isEquivalentTo(other.compile());
+    }
+
+    /**
+     * Freezes the NFA into a {@link CompiledNFA} with dense integer state ids,
+     * character range columns and flat successor arrays. The result is
+     * cached until the NFA is next modified through this class.
+     *
+     * @return the compiled form of this NFA
+     */
+    public CompiledNFA compile() {
+        CompiledNFA result = compiled;
+        if (result == null) {
+            // Threads racing here build equal copies; any of them may be kept
+            result = buildCompiled();
+            compiled = result;
+        }
+        return result;
+    }
+
+    /**
+     * Partitions sigma into equivalence classes of symbols that every state
+     * treats alike: the same successors from every state, counting range
+     * transitions. The compiled form stores one table column per class, so
+     * the number of classes bounds the width of its transition tables.
+     *
+     * @return the classes, each sorted, ordered by their smallest symbol
+     */
+    public List<Set<Character>> symbolClasses() {
+        ColumnMap columns = compile().columns;
+        Map<Integer, Set<Character>> byColumn = new LinkedHashMap<>();
+        for (char symbol : new TreeSet<>(sigma)) {
+            byColumn.computeIfAbsent(columns.columnOf(symbol), column -> new TreeSet<>()).add(symbol);
+        }
+        return new ArrayList<>(byColumn.values());
+    }
+
+    /**
+     * Checks if the NFA accepts UTF-8 encoded input without decoding it, see
+     * {@link CompiledNFA#acceptsUtf8(byte[])}.
+     *
+     * @param bytes the UTF-8 encoded input
+     * @return true if the decoded input would be accepted, false otherwise
+     */
+    public boolean acceptsUtf8(byte[] bytes) {
+        return compile().acceptsUtf8(bytes);
+    }
+
+    /**
+     * Checks many inputs in parallel, see {@link CompiledNFA#acceptsAll(List)}.
+     *
+     * @param inputs the input strings
+     * @return whether each input, by index, is accepted
+     */
+    public boolean[] acceptsAll(List<String> inputs) {
+        return compile().acceptsAll(inputs);
+    }
+
+    /**
+     * Checks every input of a stream in parallel, see
+     * {@link CompiledNFA#acceptsAll(Stream)}.
+     *
+     * @param inputs the input strings, in order
+     * @return the set of indices of accepted inputs
+     */
+    public BitSet acceptsAll(Stream<String> inputs) {
+        return compile().acceptsAll(inputs);
+    }
+
+    /**
+     * Creates a streaming matcher over the current compiled form of this NFA.
+     *
+     * @return a new matcher positioned at the start of the input
+     */
+    public NFAMatcher matcher() {
+        return compile().matcher();
+    }
+
+    /**
+     * Creates a matcher that determinizes this NFA on the fly, caching at
+     * most the given number of DFA states. The matcher works on the current
+     * compiled form and does not see later changes to the NFA.
+     *
+     * @param maxStates the most DFA states to keep cached at once
+     * @return a new lazily determinized matcher
+     */
+    public LazyDFA lazyDFA(int maxStates) {
+        return new LazyDFA(compile(), maxStates);
+    }
+
+    /**
+     * Converts the NFA into an equivalent DFA with the subset construction.
+     * Each DFA state stands for the epsilon closure of a set of NFA states and
+     * is named after the sorted names of those states, e.g. "[a, b]". Sets
+     * that would be empty get no state; the missing transition rejects.
+     * Every run of characters that all states treat alike becomes one symbol
+     * class of the DFA, so a wide range costs one column, not one per char.
+     *
+     * @return a new DFA accepting the same language
+     */
+    public DFA toDFA() {
+        DFA dfa = new DFA();
         if (startState == null) {
-            return false;
+            return dfa;
         }
-    
-        Set<NFAState> currentStates = eClosure(startState);
-    
-        for (char symbol : s.toCharArray()) {
-            Set<NFAState> nextStates = new HashSet<>();
-            for (NFAState state : currentStates) {
-                Set<NFAState> transitions = getToState(state, symbol);
-                if (transitions != null) {
-                    nextStates.addAll(transitions);
+
+        // Characters in the same column of the compiled form lead to the same
+        // set, so each set is computed once per column, and each range of the
+        // column map becomes one symbol class of the DFA
+        ColumnMap columns = compile().columns;
+        for (int i = 0; i < columns.rangeCount(); i++) {
+            dfa.addSigma(columns.rangeStart(i), columns.rangeEnd(i));
+        }
+
+        Map<Set<NFAState>, String> names = new HashMap<>();
+        Deque<Set<NFAState>> queue = new ArrayDeque<>();
+        Set<NFAState> startSet = eClosure(startState);
+        names.put(startSet, addDFAState(dfa, startSet));
+        dfa.setStart(names.get(startSet));
+        queue.add(startSet);
+
+        String[] targetOf = new String[columns.columnCount()];
+        boolean[] done = new boolean[columns.columnCount()];
+        while (!queue.isEmpty()) {
+            Set<NFAState> current = queue.poll();
+            Arrays.fill(done, false);
+            for (int i = 0; i < columns.rangeCount(); i++) {
+                int column = columns.rangeColumn(i);
+                if (!done[column]) {
+                    done[column] = true;
+                    targetOf[column] = null;
+                    Set<NFAState> next = new HashSet<>();
+                    for (NFAState state : current) {
+                        Set<NFAState> transitions = getToState(state, columns.rangeStart(i));
+                        if (transitions != null) {
+                            for (NFAState to : transitions) {
+                                next.addAll(eClosure(to));
+                            }
+                        }
+                    }
+                    if (!next.isEmpty()) {
+                        if (!names.containsKey(next)) {
+                            names.put(next, addDFAState(dfa, next));
+                            queue.add(next);
+                        }
+                        targetOf[column] = names.get(next);
+                    }
+                }
+                if (targetOf[column] != null) {
+                    dfa.addTransition(names.get(current), targetOf[column], columns.rangeStart(i));
                 }
             }
-    
-            // Applies epsilon closure to the next states
-            currentStates = new HashSet<>();
-            for (NFAState state : nextStates) {
-                currentStates.addAll(eClosure(state)); 
+        }
+        return dfa;
+    }
+
+    /**
+     * Builds an equivalent NFA without epsilon transitions. Every state keeps
+     * its name and takes over the transitions of all states in its epsilon
+     * closure, and it becomes final if its closure contains a final state, so
+     * simulating the result never needs a closure. The input character 'e',
+     * which follows epsilon transitions in this NFA, follows range
+     * transitions from 'e' to 'e' in the result.
+     *
+     * @return a new NFA with no epsilon transitions
+     */
+    public NFA removeEpsilons() {
+        Map<String, NFAState> copies = new LinkedHashMap<>();
+        for (NFAState state : states.values()) {
+            copies.put(state.getName(), new NFAState(state.getName()));
+        }
+
+        for (NFAState state : states.values()) {
+            NFAState copy = copies.get(state.getName());
+            for (NFAState member : eClosure(state)) {
+                copy.setFinalState(copy.isFinalState() || member.isFinalState());
+                for (Map.Entry<Character, Set<NFAState>> entry : member.transitions.entrySet()) {
+                    for (NFAState to : entry.getValue()) {
+                        if (entry.getKey() == 'e') {
+                            copy.setTransition('e', 'e', copies.get(to.getName()));
+                        } else {
+                            copy.setTransition(entry.getKey(), copies.get(to.getName()));
+                        }
+                    }
+                }
+                for (NFAState.RangeTransition range : member.rangeTransitions) {
+                    for (NFAState to : range.toStates) {
+                        copy.setTransition(range.low, range.high, copies.get(to.getName()));
+                    }
+                }
             }
         }
-    
-        // Checks if any of the current states are final states
-        for (NFAState state : currentStates) {
-            if (finalStates.contains(state)) {
-                return true;
+
+        NFAState start = null;
+        if (startState != null) {
+            start = copies.get(startState.getName());
+            start.setStartState(true);
+        }
+        return new NFA(copies, new HashSet<>(sigma), start);
+    }
+
+    /**
+     * Removes the states that cannot be reached from the start state and the
+     * states from which no final state can be reached, along with every
+     * transition into them. Neither kind of state can ever help accept an
+     * input, so the language is unchanged, but active sets and tables shrink.
+     * The start state is always kept, and an NFA without a start state is
+     * left unchanged.
+     *
+     * @return the number of states removed
+     */
+    public int prune() {
+        if (startState == null) {
+            return 0;
+        }
+        NFAState[] byId = states.values().toArray(new NFAState[0]);
+        int n = byId.length;
+        Map<NFAState, Integer> ids = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            ids.put(byId[i], i);
+        }
+
+        // Collects every edge, on symbols, epsilon and ranges alike, both ways
+        List<List<Integer>> forward = new ArrayList<>();
+        List<List<Integer>> backward = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            forward.add(new ArrayList<>());
+            backward.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            List<Set<NFAState>> targetSets = new ArrayList<>(byId[i].transitions.values());
+            for (NFAState.RangeTransition range : byId[i].rangeTransitions) {
+                targetSets.add(range.toStates);
+            }
+            for (Set<NFAState> targets : targetSets) {
+                for (NFAState to : targets) {
+                    forward.get(i).add(ids.get(to));
+                    backward.get(ids.get(to)).add(i);
+                }
             }
         }
-    
-        return false;
+
+        boolean[] reachable = new boolean[n];
+        mark(forward, ids.get(startState), reachable);
+        boolean[] live = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (byId[i].isFinalState() && !live[i]) {
+                mark(backward, i, live);
+            }
+        }
+
+        Set<NFAState> removed = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            if (byId[i] != startState && !(reachable[i] && live[i])) {
+                removed.add(byId[i]);
+                states.remove(byId[i].getName());
+            }
+        }
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        for (NFAState state : states.values()) {
+            state.transitions.values().removeIf(targets -> targets.removeAll(removed) && targets.isEmpty());
+            state.rangeTransitions.removeIf(range -> range.toStates.removeAll(removed) && range.toStates.isEmpty());
+        }
+        compiled = null;
+        closures = null;
+        return removed.size();
+    }
+
+    /**
+     * Marks every state reachable from a state along the given edges.
+     *
+     * @param edges the successors of each state
+     * @param from the state to start from
+     * @param marked the states reached so far, updated in place
+     */
+    private static void mark(List<List<Integer>> edges, int from, boolean[] marked) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        marked[from] = true;
+        stack.push(from);
+        while (!stack.isEmpty()) {
+            for (int to : edges.get(stack.pop())) {
+                if (!marked[to]) {
+                    marked[to] = true;
+                    stack.push(to);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the DFA state standing for a set of NFA states.
+     *
+     * @param dfa the DFA being built
+     * @param set the NFA states
+     * @return the name of the new DFA state
+     */
+    private String addDFAState(DFA dfa, Set<NFAState> set) {
+        Set<String> members = new TreeSet<>();
+        boolean isFinal = false;
+        for (NFAState state : set) {
+            members.add(state.getName());
+            isFinal |= state.isFinalState();
+        }
+        String name = members.toString();
+        dfa.addState(name);
+        if (isFinal) {
+            dfa.setFinal(name);
+        }
+        return name;
+    }
+
+    /**
+     * Numbers the states and collects every transition into edge arrays for
+     * {@link CompiledNFA#of}.
+     *
+     * @return a new compiled form of this NFA
+     */
+    private CompiledNFA buildCompiled() {
+        NFAState[] byId = states.values().toArray(new NFAState[0]);
+        Map<NFAState, Integer> ids = new HashMap<>();
+        String[] names = new String[byId.length];
+        for (int i = 0; i < byId.length; i++) {
+            ids.put(byId[i], i);
+            names[i] = byId[i].getName();
+        }
+
+        long[] finals = new long[(byId.length + 63) >>> 6];
+        for (int i = 0; i < byId.length; i++) {
+            if (byId[i].isFinalState()) {
+                finals[i >>> 6] |= 1L << i;
+            }
+        }
+
+        int count = 0;
+        int rangeCount = 0;
+        for (NFAState state : byId) {
+            for (Set<NFAState> targets : state.transitions.values()) {
+                count += targets.size();
+            }
+            for (NFAState.RangeTransition range : state.rangeTransitions) {
+                rangeCount += range.toStates.size();
+            }
+        }
+
+        int[] from = new int[count];
+        char[] symbols = new char[count];
+        int[] to = new int[count];
+        int[] rangeFrom = new int[rangeCount];
+        char[] lows = new char[rangeCount];
+        char[] highs = new char[rangeCount];
+        int[] rangeTo = new int[rangeCount];
+        count = 0;
+        rangeCount = 0;
+        for (int i = 0; i < byId.length; i++) {
+            for (Map.Entry<Character, Set<NFAState>> entry : byId[i].transitions.entrySet()) {
+                for (NFAState target : entry.getValue()) {
+                    from[count] = i;
+                    symbols[count] = entry.getKey();
+                    to[count++] = ids.get(target);
+                }
+            }
+            for (NFAState.RangeTransition range : byId[i].rangeTransitions) {
+                for (NFAState target : range.toStates) {
+                    rangeFrom[rangeCount] = i;
+                    lows[rangeCount] = range.low;
+                    highs[rangeCount] = range.high;
+                    rangeTo[rangeCount++] = ids.get(target);
+                }
+            }
+        }
+
+        char[] alphabet = new char[sigma.size()];
+        int k = 0;
+        for (char symbol : sigma) {
+            alphabet[k++] = symbol;
+        }
+        int start = startState == null ? -1 : ids.get(startState);
+        return CompiledNFA.of(names, start, finals, alphabet, from, symbols, to, count,
+                rangeFrom, lows, highs, rangeTo, rangeCount);
     }
     
     /**
@@ -304,12 +896,7 @@ public class NFA implements NFAInterface{
      */
     @Override
     public NFAState getState(String name) {
-        for (NFAState state : states) {
-            if (state.getName().equals(name)) {
-                return state; 
-            }
-        }
-        return null;
+        return states.get(name);
     }
 
     /**
@@ -320,12 +907,8 @@ public class NFA implements NFAInterface{
      */
     @Override
     public boolean isFinal(String name) {
-        for (NFAState state : finalStates) {
-            if (state.getName().equals(name)) {
-                return true;
-            }
-        }
-        return false;
+        NFAState state = states.get(name);
+        return state != null && state.isFinalState();
     }
 
     /**
@@ -336,12 +919,8 @@ public class NFA implements NFAInterface{
      */
     @Override
     public boolean isStart(String name) {
-        for (NFAState state : states) {
-            if (state.isStartState() && state.getName().equals(name)) {
-                return true;
-            }
-        }
-        return false;
+        NFAState state = states.get(name);
+        return state != null && state.isStartState();
     }
     
 }
@@ -0,0 +1,296 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds an NFA from bulk data in one pass. States are numbered from 0 and
+ * transitions are given as (from, symbol, to) triples in parallel arrays, so
+ * no name lookups or per-edge sets are needed while loading. Use
+ * {@link #compile()} to go straight to the immutable, compact
+ * {@link CompiledNFA} without creating any NFAState objects, or
+ * {@link #build()} for an ordinary NFA.
+ *
+ * As with {@link NFA#addTransition}, the symbol 'e' labels an epsilon
+ * transition, and adding one puts 'e' into sigma. Range transitions cover a
+ * whole character class with one edge, and their characters need not be in
+ * sigma.
+ */
+public final class NFABuilder {
+    private final int stateCount;
+    private String[] names;
+    private char[] sigma = new char[0];
+    private int start = -1;
+    private final long[] finals;
+
+    private int[] edgeFrom;
+    private char[] edgeSymbol;
+    private int[] edgeTo;
+    private int edgeCount;
+
+    private int[] rangeFrom = new int[0];
+    private char[] rangeLow = new char[0];
+    private char[] rangeHigh = new char[0];
+    private int[] rangeTo = new int[0];
+    private int rangeCount;
+
+    /**
+     * Creates a builder for an NFA with the given number of states, named
+     * "q0", "q1" and so on unless {@link #names(String[])} is called.
+     *
+     * @param stateCount the number of states
+     * @param expectedTransitions the number of transitions to reserve room for
+     */
+    public NFABuilder(int stateCount, int expectedTransitions) {
+        if (stateCount < 0 || expectedTransitions < 0) {
+            throw new IllegalArgumentException("negative size");
+        }
+        this.stateCount = stateCount;
+        this.finals = new long[(stateCount + 63) >>> 6];
+        this.edgeFrom = new int[expectedTransitions];
+        this.edgeSymbol = new char[expectedTransitions];
+        this.edgeTo = new int[expectedTransitions];
+    }
+
+    /**
+     * Creates a builder for an NFA with the given number of states.
+     *
+     * @param stateCount the number of states
+     */
+    public NFABuilder(int stateCount) {
+        this(stateCount, 16);
+    }
+
+    /**
+     * Sets the state names.
+     *
+     * @param names one distinct name per state, indexed by state
+     * @return this builder
+     */
+    public NFABuilder names(String[] names) {
+        if (names.length != stateCount) {
+            throw new IllegalArgumentException("expected " + stateCount + " names but got " + names.length);
+        }
+        this.names = names.clone();
+        return this;
+    }
+
+    /**
+     * Adds symbols to sigma.
+     *
+     * @param symbols the symbols to add
+     * @return this builder
+     */
+    public NFABuilder sigma(char... symbols) {
+        char[] grown = Arrays.copyOf(sigma, sigma.length + symbols.length);
+        System.arraycopy(symbols, 0, grown, sigma.length, symbols.length);
+        sigma = grown;
+        return this;
+    }
+
+    /**
+     * Sets the start state.
+     *
+     * @param state the start state
+     * @return this builder
+     */
+    public NFABuilder start(int state) {
+        checkState(state);
+        start = state;
+        return this;
+    }
+
+    /**
+     * Marks states as final.
+     *
+     * @param states the final states
+     * @return this builder
+     */
+    public NFABuilder finals(int... states) {
+        for (int state : states) {
+            checkState(state);
+            finals[state >>> 6] |= 1L << state;
+        }
+        return this;
+    }
+
+    /**
+     * Adds a single transition.
+     *
+     * @param from the source state
+     * @param symbol the symbol, or 'e' for an epsilon transition
+     * @param to the target state
+     * @return this builder
+     */
+    public NFABuilder transition(int from, char symbol, int to) {
+        checkState(from);
+        checkState(to);
+        ensureCapacity(edgeCount + 1);
+        edgeFrom[edgeCount] = from;
+        edgeSymbol[edgeCount] = symbol;
+        edgeTo[edgeCount++] = to;
+        return this;
+    }
+
+    /**
+     * Adds a transition on every character from low to high, inclusive.
+     *
+     * @param from the source state
+     * @param low the first character of the range
+     * @param high the last character of the range
+     * @param to the target state
+     * @return this builder
+     */
+    public NFABuilder transition(int from, char low, char high, int to) {
+        checkState(from);
+        checkState(to);
+        if (low > high) {
+            throw new IllegalArgumentException("empty range '" + low + "'-'" + high + "'");
+        }
+        if (rangeCount == rangeFrom.length) {
+            int grown = Math.max(4, rangeCount * 2);
+            rangeFrom = Arrays.copyOf(rangeFrom, grown);
+            rangeLow = Arrays.copyOf(rangeLow, grown);
+            rangeHigh = Arrays.copyOf(rangeHigh, grown);
+            rangeTo = Arrays.copyOf(rangeTo, grown);
+        }
+        rangeFrom[rangeCount] = from;
+        rangeLow[rangeCount] = low;
+        rangeHigh[rangeCount] = high;
+        rangeTo[rangeCount++] = to;
+        return this;
+    }
+
+    /**
+     * Adds transitions given as parallel arrays, the i-th transition going
+     * from from[i] to to[i] on symbols[i].
+     *
+     * @param from the source states
+     * @param symbols the symbols, 'e' for epsilon transitions
+     * @param to the target states
+     * @return this builder
+     */
+    public NFABuilder transitions(int[] from, char[] symbols, int[] to) {
+        int count = from.length;
+        if (symbols.length != count || to.length != count) {
+            throw new IllegalArgumentException("transition arrays differ in length");
+        }
+        for (int i = 0; i < count; i++) {
+            checkState(from[i]);
+            checkState(to[i]);
+        }
+        ensureCapacity(edgeCount + count);
+        System.arraycopy(from, 0, edgeFrom, edgeCount, count);
+        System.arraycopy(symbols, 0, edgeSymbol, edgeCount, count);
+        System.arraycopy(to, 0, edgeTo, edgeCount, count);
+        edgeCount += count;
+        return this;
+    }
+
+    /**
+     * Builds the compact, immutable form directly from the collected arrays.
+     *
+     * @return a new compiled NFA
+     */
+    public CompiledNFA compile() {
+        return CompiledNFA.of(stateNames(), start, finals.clone(), fullSigma(),
+                edgeFrom, edgeSymbol, edgeTo, edgeCount, rangeFrom, rangeLow, rangeHigh, rangeTo, rangeCount);
+    }
+
+    /**
+     * Builds an ordinary NFA with one NFAState per state.
+     *
+     * @return a new NFA
+     */
+    public NFA build() {
+        String[] stateNames = stateNames();
+        NFAState[] byId = new NFAState[stateCount];
+        Map<String, NFAState> states = new LinkedHashMap<>(stateCount * 4 / 3 + 1);
+        for (int i = 0; i < stateCount; i++) {
+            byId[i] = new NFAState(stateNames[i]);
+            byId[i].setFinalState((finals[i >>> 6] & (1L << i)) != 0);
+            if (states.put(stateNames[i], byId[i]) != null) {
+                throw new IllegalArgumentException("duplicate state name " + stateNames[i]);
+            }
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            byId[edgeFrom[i]].setTransition(edgeSymbol[i], byId[edgeTo[i]]);
+        }
+        for (int i = 0; i < rangeCount; i++) {
+            byId[rangeFrom[i]].setTransition(rangeLow[i], rangeHigh[i], byId[rangeTo[i]]);
+        }
+
+        Set<Character> symbols = new HashSet<>();
+        for (char symbol : fullSigma()) {
+            symbols.add(symbol);
+        }
+        NFAState startState = null;
+        if (start >= 0) {
+            startState = byId[start];
+            startState.setStartState(true);
+        }
+        return new NFA(states, symbols, startState);
+    }
+
+    /**
+     * Gets sigma, with 'e' added if there is an epsilon transition, and checks
+     * that every other transition symbol is in it.
+     */
+    private char[] fullSigma() {
+        char[] sorted = sigma.clone();
+        Arrays.sort(sorted);
+        boolean hasEpsilon = false;
+        for (int i = 0; i < edgeCount; i++) {
+            char symbol = edgeSymbol[i];
+            if (symbol == 'e') {
+                hasEpsilon = true;
+            } else if (Arrays.binarySearch(sorted, symbol) < 0) {
+                throw new IllegalArgumentException("symbol '" + symbol + "' is not in sigma");
+            }
+        }
+        if (!hasEpsilon) {
+            return sorted;
+        }
+        char[] withEpsilon = Arrays.copyOf(sorted, sorted.length + 1);
+        withEpsilon[sorted.length] = 'e';
+        return withEpsilon;
+    }
+
+    /**
+     * Gets the given names or generates "q0", "q1" and so on.
+     */
+    private String[] stateNames() {
+        if (names != null) {
+            return names.clone();
+        }
+        String[] generated = new String[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            generated[i] = "q" + i;
+        }
+        return generated;
+    }
+
+    /**
+     * Checks that a state number is in range.
+     */
+    private void checkState(int state) {
+        if (state < 0 || state >= stateCount) {
+            throw new IndexOutOfBoundsException("state " + state + " out of range for " + stateCount + " states");
+        }
+    }
+
+    /**
+     * Grows the transition arrays to hold at least the given number of edges.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > edgeFrom.length) {
+            int grown = Math.max(capacity, edgeFrom.length * 2);
+            edgeFrom = Arrays.copyOf(edgeFrom, grown);
+            edgeSymbol = Arrays.copyOf(edgeSymbol, grown);
+            edgeTo = Arrays.copyOf(edgeTo, grown);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Simulates a {@link CompiledNFA} on input that arrives in pieces. The input
+ * can be fed as single characters, arrays, buffers or readers, and
+ * {@link #isAccepting()} tells at any point whether the input fed so far is
+ * accepted. All scratch space is allocated up front, so feeding input and
+ * resetting the matcher for reuse do not allocate.
+ *
+ * UTF-8 bytes can be fed instead of chars through the {@code feedUtf8}
+ * methods; they are matched against a byte trie of sigma without decoding.
+ * Only 4-byte sequences, for characters outside the Basic Multilingual
+ * Plane, are decoded and fed as their surrogate pair, just as a String
+ * holds them. A multi-byte character may be split across calls. Chars and bytes should
+ * not be mixed while a character is only partly fed.
+ *
+ * Without an observer, the matcher settles as soon as the outcome is known:
+ * once no state is active, further input is skipped, and once a universal
+ * state (one that accepts every input over the alphabet) is active, further
+ * characters are only checked for being in the alphabet. The active state
+ * count then stays at its value from that point.
+ *
+ * An optional {@link SimulationObserver} sees the active state count and the
+ * closure work of every step. An observed matcher never settles early, so the
+ * observer sees every step in full.
+ *
+ * A matcher is not safe for concurrent use; each thread needs its own.
+ */
+public final class NFAMatcher {
+    private static final int READ_BUFFER_SIZE = 8192;
+    // utf8Node while inside a 4-byte sequence, which is decoded instead of
+    // looked up in the trie
+    private static final int SUPPLEMENTARY = -2;
+
+    private final CompiledNFA nfa;
+    private StateSet current;
+    private StateSet next;
+    private final int[] stack;
+    private final long[] universal;
+    private boolean settled;
+    private char[] readBuffer;
+    private Utf8Table utf8;
+    // Trie node inside a partly fed character, -1 while skipping one, or
+    // SUPPLEMENTARY inside a 4-byte sequence
+    private int utf8Node;
+    private int utf8Remaining;
+    private int utf8Char;
+    private SimulationObserver observer;
+    private int position;
+
+    /**
+     * Creates a matcher positioned at the start of the input.
+     *
+     * @param nfa the compiled NFA to simulate
+     */
+    NFAMatcher(CompiledNFA nfa) {
+        this(nfa, new StateSet(nfa.getStateCount()), new StateSet(nfa.getStateCount()),
+                new int[nfa.getStateCount()]);
+    }
+
+    /**
+     * Creates a matcher that simulates in the given scratch space, which
+     * must have room for every state of the NFA.
+     *
+     * @param nfa the compiled NFA to simulate
+     * @param current a state set for the active states
+     * @param next a state set for the states after a step
+     * @param stack a closure stack of at least one slot per state
+     */
+    NFAMatcher(CompiledNFA nfa, StateSet current, StateSet next, int[] stack) {
+        this.nfa = nfa;
+        this.current = current;
+        this.next = next;
+        this.stack = stack;
+        this.universal = nfa.universal();
+        reset();
+    }
+
+    /**
+     * Discards the input fed so far so the matcher can be reused.
+     *
+     * @return this matcher
+     */
+    public NFAMatcher reset() {
+        utf8Node = 0;
+        utf8Remaining = 0;
+        position = 0;
+        current.clear();
+        int work = 0;
+        if (nfa.start >= 0) {
+            work = nfa.close(nfa.start, current, stack);
+        }
+        if (observer != null) {
+            observer.onStep(0, (char) 0, current.size, work);
+        }
+        settled = observer == null && universal != null && CompiledNFA.anyIn(universal, current);
+        return this;
+    }
+
+    /**
+     * Attaches an observer, replacing any previous one, and resets the
+     * matcher so that the observer sees the input from its start.
+     *
+     * @param observer the observer, or null to detach it
+     * @return this matcher
+     */
+    public NFAMatcher observe(SimulationObserver observer) {
+        this.observer = observer;
+        return reset();
+    }
+
+    /**
+     * Feeds one character.
+     *
+     * @param c the next input character
+     */
+    public void feed(char c) {
+        feedColumn(nfa.columns.columnOf(c), c);
+    }
+
+    /**
+     * Steps the simulation on the column of a character, or rejects for -1.
+     */
+    private void feedColumn(int column, char c) {
+        if (settled) {
+            // A universal state is active, so only a character outside the alphabet can reject
+            if (column < 0) {
+                current.clear();
+                settled = false;
+            }
+            return;
+        }
+        int work = 0;
+        if (column < 0) {
+            current.clear();
+        } else {
+            work = nfa.step(current, column, next, stack);
+            StateSet swap = current;
+            current = next;
+            next = swap;
+        }
+        if (observer != null) {
+            observer.onStep(++position, c, current.size, work);
+        } else if (universal != null && CompiledNFA.anyIn(universal, current)) {
+            settled = true;
+        }
+    }
+
+    /**
+     * Checks if no further input can change the outcome from rejecting.
+     */
+    private boolean isDead() {
+        return current.size == 0 && observer == null;
+    }
+
+    /**
+     * Feeds part of an array.
+     *
+     * @param chars the input characters
+     * @param offset the index of the first character to feed
+     * @param length the number of characters to feed
+     */
+    public void feed(char[] chars, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end && !isDead(); i++) {
+            feed(chars[i]);
+        }
+    }
+
+    /**
+     * Feeds every character of a sequence.
+     *
+     * @param s the input characters
+     */
+    public void feed(CharSequence s) {
+        for (int i = 0; i < s.length() && !isDead(); i++) {
+            feed(s.charAt(i));
+        }
+    }
+
+    /**
+     * Feeds the remaining characters of a buffer, leaving its position at
+     * its limit.
+     *
+     * @param buffer the input characters
+     */
+    public void feed(CharBuffer buffer) {
+        if (buffer.hasArray()) {
+            feed(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            feed(buffer.get());
+        }
+    }
+
+    /**
+     * Feeds everything a reader produces until the end of its stream. The
+     * reader is not closed.
+     *
+     * @param reader the input characters
+     * @throws IOException if reading fails
+     */
+    public void feed(Reader reader) throws IOException {
+        if (readBuffer == null) {
+            readBuffer = new char[READ_BUFFER_SIZE];
+        }
+        int read;
+        while ((read = reader.read(readBuffer, 0, readBuffer.length)) >= 0) {
+            feed(readBuffer, 0, read);
+        }
+    }
+
+    /**
+     * Feeds part of an array of UTF-8 encoded bytes.
+     *
+     * @param bytes the input bytes
+     * @param offset the index of the first byte to feed
+     * @param length the number of bytes to feed
+     */
+    public void feedUtf8(byte[] bytes, int offset, int length) {
+        Utf8Table table = utf8Table();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            feedUtf8(table, bytes[i]);
+        }
+    }
+
+    /**
+     * Feeds the remaining UTF-8 encoded bytes of a buffer, leaving its
+     * position at its limit.
+     *
+     * @param buffer the input bytes
+     */
+    public void feedUtf8(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            feedUtf8(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        Utf8Table table = utf8Table();
+        while (buffer.hasRemaining()) {
+            feedUtf8(table, buffer.get());
+        }
+    }
+
+    /**
+     * Moves through the byte trie, stepping the simulation when a byte
+     * completes a character. A character with no symbol is consumed whole,
+     * as one rejecting step, using the length given by its lead byte.
+     */
+    private void feedUtf8(Utf8Table table, byte b) {
+        if (utf8Remaining == 0) {
+            int lead = b & 0xFF;
+            utf8Remaining = lead >= 0xF0 ? 3 : lead >= 0xE0 ? 2 : lead >= 0xC0 ? 1 : 0;
+            utf8Char = lead < 0x80 ? lead : lead & (0x3F >>> utf8Remaining);
+            if (utf8Remaining == 3) {
+                utf8Node = SUPPLEMENTARY;
+                return;
+            }
+        } else {
+            utf8Remaining--;
+            utf8Char = (utf8Char << 6) | (b & 0x3F);
+            if (utf8Node == SUPPLEMENTARY) {
+                if ((b & 0xC0) == 0x80) {
+                    if (utf8Remaining == 0) {
+                        utf8Node = 0;
+                        feedSupplementary(utf8Char);
+                    }
+                    return;
+                }
+                // A byte that cannot continue the sequence rejects it
+                utf8Node = -1;
+            }
+        }
+
+        int entry = utf8Node < 0 ? Utf8Table.INVALID : table.entry(utf8Node, b);
+        if (Utf8Table.isNode(entry)) {
+            utf8Node = Utf8Table.node(entry);
+        } else if (utf8Remaining > 0) {
+            // Skips the rest of a character that cannot match
+            utf8Node = -1;
+        } else {
+            utf8Node = 0;
+            feedColumn(entry, (char) utf8Char);
+        }
+    }
+
+    /**
+     * Steps the simulation on the surrogate pair of a decoded 4-byte
+     * sequence, or rejects if it does not encode a supplementary character.
+     */
+    private void feedSupplementary(int codePoint) {
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT || codePoint > Character.MAX_CODE_POINT) {
+            feedColumn(-1, (char) codePoint);
+            return;
+        }
+        char high = Character.highSurrogate(codePoint);
+        char low = Character.lowSurrogate(codePoint);
+        feedColumn(nfa.columns.columnOf(high), high);
+        feedColumn(nfa.columns.columnOf(low), low);
+    }
+
+    /**
+     * Gets the byte trie of the NFA, keeping it for later calls.
+     */
+    private Utf8Table utf8Table() {
+        if (utf8 == null) {
+            utf8 = nfa.utf8Table();
+        }
+        return utf8;
+    }
+
+    /**
+     * Checks if the input fed since the last reset is accepted.
+     *
+     * @return true if one of the active states is final and no UTF-8
+     *         character is partly fed
+     */
+    public boolean isAccepting() {
+        return utf8Remaining == 0 && nfa.anyFinal(current);
+    }
+
+    /**
+     * Gets the number of NFA states active after the input fed so far.
+     *
+     * @return the active state count
+     */
+    public int getActiveStateCount() {
+        return current.size;
+    }
+}
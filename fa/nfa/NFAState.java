@@ -11,10 +11,11 @@ import java.util.*;
 public class NFAState extends State {
 
     protected Map<Character, Set<NFAState>> transitions;
+    protected List<RangeTransition> rangeTransitions;
     protected Set<NFAState> epsilonTransitions;
     protected  boolean isStart;
+    protected boolean isFinal;
     protected String name;
-    protected boolean visited;
 
     /**
      * Constructs an NFAState with the given name.
@@ -26,7 +27,28 @@ public class NFAState extends State {
         this.isStart = false; 
         this.epsilonTransitions = new HashSet<>();
         this.transitions = new HashMap<>();
-        this.visited = false;
+        this.rangeTransitions = new ArrayList<>(0);
+    }
+
+    /**
+     * Adds a transition from this state to another state on every character
+     * from low to high, inclusive. One range transition stands in for a
+     * separate transition on each character of a character class.
+     *
+     * @param low The first character of the range.
+     * @param high The last character of the range.
+     * @param toState The state to transition to on the characters of the range.
+     */
+    public void setTransition(char low, char high, NFAState toState) {
+        for (RangeTransition range : rangeTransitions) {
+            if (range.low == low && range.high == high) {
+                range.toStates.add(toState);
+                return;
+            }
+        }
+        RangeTransition range = new RangeTransition(low, high);
+        range.toStates.add(toState);
+        rangeTransitions.add(range);
     }
 
     /**
@@ -48,16 +70,24 @@ public class NFAState extends State {
 
     /**
      * Retrieves the set of states that can be reached from this state on a given symbol.
+     * Range transitions covering the symbol are included.
      * 
      * @param symbol The input symbol.
      * @return A set of states that can be transitioned to on the input symbol.
-     *         If no transition exists for the symbol, returns an empty set.
+     *         If no transition exists for the symbol, returns null.
      */
     public Set<NFAState> toStates(Character symbol) {
-        if (transitions.get(symbol) != null) {
-            return transitions.get(symbol);
+        Set<NFAState> exact = transitions.get(symbol);
+        Set<NFAState> union = null;
+        for (RangeTransition range : rangeTransitions) {
+            if (range.low <= symbol && symbol <= range.high) {
+                if (union == null) {
+                    union = exact == null ? new HashSet<>() : new HashSet<>(exact);
+                }
+                union.addAll(range.toStates);
+            }
         }
-        return null;
+        return union == null ? exact : union;
     }
 
     /**
@@ -78,6 +108,24 @@ public class NFAState extends State {
         return isStart;
     }
 
+    /**
+     * Marks this state as a final state of the NFA.
+     * 
+     * @param isFinal True to mark this state as final, false otherwise.
+     */
+    public void setFinalState(boolean isFinal) {
+        this.isFinal = isFinal;
+    }
+
+    /**
+     * Checks if this state is a final state of the NFA.
+     * 
+     * @return True if this is a final state, false otherwise.
+     */
+    public boolean isFinalState() {
+        return isFinal;
+    }
+
     /**
      * Gets the name of the state.
      * 
@@ -105,6 +153,20 @@ public class NFAState extends State {
         epsilonTransitions.add(toState);
     }
 
+    /**
+     * A transition on every character of a range.
+     */
+    static final class RangeTransition {
+        final char low;
+        final char high;
+        final Set<NFAState> toStates = new HashSet<>();
+
+        RangeTransition(char low, char high) {
+            this.low = low;
+            this.high = high;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -0,0 +1,228 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A set of patterns, each an NFA with an integer id, that are matched
+ * together. The patterns are joined into one union NFA whose start state has
+ * an epsilon edge to each pattern's start state and whose final states carry
+ * the id of the pattern they came from, so an input is scanned once for all
+ * patterns instead of once per pattern. Each step only costs time for the
+ * states still active, so patterns that have already failed drop out.
+ *
+ * Patterns are copied when they are added; later changes to an NFA do not
+ * affect the set. Once every pattern is added, {@link #matches} may be
+ * called from any number of threads.
+ */
+public final class PatternSet {
+    private final List<CompiledNFA> patterns = new ArrayList<>();
+    private volatile Union union;
+
+    /**
+     * The union of the patterns, with the pattern id of each state.
+     */
+    private static final class Union {
+        final CompiledNFA nfa;
+        final int[] patternOf;
+
+        Union(CompiledNFA nfa, int[] patternOf) {
+            this.nfa = nfa;
+            this.patternOf = patternOf;
+        }
+    }
+
+    /**
+     * Adds a pattern to the set.
+     *
+     * @param nfa the pattern
+     * @return the id of the pattern, which is the number of patterns added before it
+     */
+    public int add(NFA nfa) {
+        return add(nfa.compile());
+    }
+
+    /**
+     * Adds a compiled pattern to the set.
+     *
+     * @param nfa the pattern
+     * @return the id of the pattern, which is the number of patterns added before it
+     */
+    public synchronized int add(CompiledNFA nfa) {
+        patterns.add(nfa);
+        union = null;
+        return patterns.size() - 1;
+    }
+
+    /**
+     * Gets the number of patterns in the set.
+     *
+     * @return the pattern count
+     */
+    public synchronized int getPatternCount() {
+        return patterns.size();
+    }
+
+    /**
+     * Finds every pattern that accepts a string, in a single pass over it.
+     * The state sets are the calling thread's scratch space, shared with
+     * every other automaton the thread simulates.
+     *
+     * @param s the input string
+     * @return the ids of the patterns that accept s
+     */
+    public BitSet matches(CharSequence s) {
+        Union u = union();
+        BitSet accepted = new BitSet();
+        CompiledNFA nfa = u.nfa;
+        Scratch scratch = Scratch.forThread(nfa.getStateCount());
+        StateSet current = scratch.current;
+        StateSet next = scratch.next;
+        int[] stack = scratch.stack;
+        current.clear();
+        nfa.close(nfa.start, current, stack);
+        for (int i = 0; i < s.length() && current.size > 0; i++) {
+            int column = nfa.columns.columnOf(s.charAt(i));
+            if (column < 0) {
+                current.clear();
+                break;
+            }
+            nfa.step(current, column, next, stack);
+            StateSet swap = current;
+            current = next;
+            next = swap;
+        }
+        for (int k = 0; k < current.size; k++) {
+            int q = current.dense[k];
+            if (nfa.isFinal(q)) {
+                accepted.set(u.patternOf[q]);
+            }
+        }
+        current.clear();
+        return accepted;
+    }
+
+    /**
+     * Gets the union NFA, building it on first use after a pattern is added.
+     */
+    private Union union() {
+        Union result = union;
+        if (result == null) {
+            synchronized (this) {
+                result = union;
+                if (result == null) {
+                    result = build(patterns);
+                    union = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Joins the patterns into one NFA. The union's alphabet is cut at every
+     * range boundary of every pattern, so each pattern column is a set of
+     * whole union pieces, and each pattern edge is copied onto its pieces
+     * before equal pieces are merged again. The union start state is 0 and
+     * pattern p's states follow those of the patterns before it.
+     */
+    private static Union build(List<CompiledNFA> patterns) {
+        int stateCount = 1;
+        int rangeCount = 0;
+        int epsCount = 0;
+        for (CompiledNFA p : patterns) {
+            stateCount += p.getStateCount();
+            rangeCount += p.columns.rangeCount();
+            epsCount += p.epsTargets.length + (p.start >= 0 ? 1 : 0);
+        }
+        char[] lows = new char[rangeCount];
+        char[] highs = new char[rangeCount];
+        rangeCount = 0;
+        for (CompiledNFA p : patterns) {
+            for (int r = 0; r < p.columns.rangeCount(); r++) {
+                lows[rangeCount] = p.columns.rangeStart(r);
+                highs[rangeCount++] = p.columns.rangeEnd(r);
+            }
+        }
+        ColumnMap pieces = ColumnMap.of(new char[0], lows, highs, rangeCount);
+
+        // The union pieces that make up each column of each pattern
+        int[][][] piecesOf = new int[patterns.size()][][];
+        int edgeCount = 0;
+        for (int id = 0; id < patterns.size(); id++) {
+            CompiledNFA p = patterns.get(id);
+            int[] counts = new int[p.columnCount];
+            int[] columnOf = new int[pieces.rangeCount()];
+            for (int r = 0; r < pieces.rangeCount(); r++) {
+                columnOf[r] = p.columns.columnOf(pieces.rangeStart(r));
+                if (columnOf[r] >= 0) {
+                    counts[columnOf[r]]++;
+                }
+            }
+            int[][] byColumn = new int[p.columnCount][];
+            for (int c = 0; c < p.columnCount; c++) {
+                byColumn[c] = new int[counts[c]];
+                counts[c] = 0;
+            }
+            for (int r = 0; r < pieces.rangeCount(); r++) {
+                if (columnOf[r] >= 0) {
+                    byColumn[columnOf[r]][counts[columnOf[r]]++] = pieces.rangeColumn(r);
+                }
+            }
+            piecesOf[id] = byColumn;
+            for (int row = 0; row < p.deltaIndex.length - 1; row++) {
+                edgeCount += (p.deltaIndex[row + 1] - p.deltaIndex[row]) * byColumn[row % p.columnCount].length;
+            }
+        }
+
+        String[] names = new String[stateCount];
+        long[] finals = new long[(stateCount + 63) >>> 6];
+        int[] patternOf = new int[stateCount];
+        int[] edgeFrom = new int[edgeCount];
+        int[] edgeColumn = new int[edgeCount];
+        int[] edgeTo = new int[edgeCount];
+        int[] epsFrom = new int[epsCount];
+        int[] epsTo = new int[epsCount];
+        names[0] = "start";
+        patternOf[0] = -1;
+        edgeCount = 0;
+        epsCount = 0;
+        int offset = 1;
+        for (int id = 0; id < patterns.size(); id++) {
+            CompiledNFA p = patterns.get(id);
+            int n = p.getStateCount();
+            for (int q = 0; q < n; q++) {
+                names[offset + q] = id + ":" + p.getStateName(q);
+                patternOf[offset + q] = id;
+                if (p.isFinal(q)) {
+                    finals[(offset + q) >>> 6] |= 1L << (offset + q);
+                }
+                for (int c = 0; c < p.columnCount; c++) {
+                    int row = q * p.columnCount + c;
+                    for (int i = p.deltaIndex[row]; i < p.deltaIndex[row + 1]; i++) {
+                        for (int piece : piecesOf[id][c]) {
+                            edgeFrom[edgeCount] = offset + q;
+                            edgeColumn[edgeCount] = piece;
+                            edgeTo[edgeCount++] = offset + p.deltaTargets[i];
+                        }
+                    }
+                }
+                for (int i = p.epsIndex[q]; i < p.epsIndex[q + 1]; i++) {
+                    epsFrom[epsCount] = offset + q;
+                    epsTo[epsCount++] = offset + p.epsTargets[i];
+                }
+            }
+            // Edges out of the union start state are epsilon edges only, so
+            // an 'e' in the input does not follow them
+            if (p.start >= 0) {
+                epsFrom[epsCount] = 0;
+                epsTo[epsCount++] = offset + p.start;
+            }
+            offset += n;
+        }
+        CompiledNFA nfa = CompiledNFA.mergeColumns(names, 0, finals, pieces,
+                edgeFrom, edgeColumn, edgeTo, edgeCount, epsFrom, epsTo, epsCount);
+        return new Union(nfa, patternOf);
+    }
+}
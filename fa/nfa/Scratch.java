@@ -0,0 +1,35 @@
+package fa.nfa;
+
+/**
+ * Per-thread scratch space for simulating an automaton: two state sets and
+ * a closure stack, grown to the largest automaton the thread has simulated.
+ * It holds no reference to any automaton, so keeping it for the life of a
+ * thread does not keep automata alive.
+ */
+final class Scratch {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    StateSet current = new StateSet(0);
+    StateSet next = new StateSet(0);
+    int[] stack = new int[0];
+
+    private Scratch() {
+    }
+
+    /**
+     * Gets the calling thread's scratch space, with room for the states of
+     * an automaton. The sets are left as the last simulation left them.
+     *
+     * @param stateCount the number of states in the automaton
+     * @return the scratch space of the calling thread
+     */
+    static Scratch forThread(int stateCount) {
+        Scratch scratch = SCRATCH.get();
+        if (scratch.stack.length < stateCount) {
+            scratch.current = new StateSet(stateCount);
+            scratch.next = new StateSet(stateCount);
+            scratch.stack = new int[stateCount];
+        }
+        return scratch;
+    }
+}
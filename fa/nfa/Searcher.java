@@ -0,0 +1,123 @@
+package fa.nfa;
+
+/**
+ * Finds the spans of an input that a {@link CompiledNFA} accepts in one pass,
+ * without restarting the simulation at every position. Every active state is
+ * tagged with the position its thread started at; the start state's closure
+ * is added again at each position with that position as its origin. When two
+ * threads reach the same state, the one that started first keeps it, so every
+ * state carries the leftmost origin that reaches it.
+ *
+ * Active states are kept in order of origin, since older threads are stepped
+ * first and new ones are added last. The first final state in that order has
+ * the leftmost origin, and a thread that started after the best match found
+ * so far can never beat it and is dropped.
+ *
+ * A searcher keeps scratch space and is not safe for concurrent use.
+ */
+final class Searcher {
+    private final CompiledNFA nfa;
+    private StateSet current;
+    private StateSet next;
+    private int[] origins;
+    private int[] nextOrigins;
+    private final int[] stack;
+
+    /**
+     * Creates a searcher with room for every state of an NFA.
+     *
+     * @param nfa the compiled NFA to search with
+     */
+    Searcher(CompiledNFA nfa) {
+        int n = nfa.getStateCount();
+        this.nfa = nfa;
+        this.current = new StateSet(n);
+        this.next = new StateSet(n);
+        this.origins = new int[n];
+        this.nextOrigins = new int[n];
+        this.stack = new int[n];
+    }
+
+    /**
+     * Finds the leftmost span at or after a position that the NFA accepts,
+     * taking the longest one among those starting there.
+     *
+     * @param s the input
+     * @param from the first position a match may start at
+     * @return the match, or null if there is none
+     */
+    Match find(CharSequence s, int from) {
+        if (nfa.start < 0 || from > s.length()) {
+            return null;
+        }
+        int bestStart = -1;
+        int bestEnd = -1;
+        current.clear();
+        for (int i = from; ; i++) {
+            if (bestStart < 0) {
+                close(nfa.start, current, origins, i);
+            }
+
+            // The first final state in origin order has the leftmost origin
+            for (int k = 0; k < current.size; k++) {
+                int q = current.dense[k];
+                if (nfa.isFinal(q)) {
+                    if (bestStart < 0 || origins[q] <= bestStart) {
+                        bestStart = origins[q];
+                        bestEnd = i;
+                    }
+                    break;
+                }
+            }
+            if (i == s.length() || (bestStart >= 0 && (current.size == 0 || origins[current.dense[0]] > bestStart))) {
+                break;
+            }
+
+            next.clear();
+            int column = nfa.columns.columnOf(s.charAt(i));
+            if (column >= 0) {
+                for (int k = 0; k < current.size; k++) {
+                    int q = current.dense[k];
+                    if (bestStart >= 0 && origins[q] > bestStart) {
+                        break;
+                    }
+                    int row = q * nfa.columnCount + column;
+                    for (int j = nfa.deltaIndex[row], end = nfa.deltaIndex[row + 1]; j < end; j++) {
+                        close(nfa.deltaTargets[j], next, nextOrigins, origins[q]);
+                    }
+                }
+            }
+
+            StateSet swap = current;
+            current = next;
+            next = swap;
+            int[] swapOrigins = origins;
+            origins = nextOrigins;
+            nextOrigins = swapOrigins;
+        }
+        return bestStart < 0 ? null : new Match(bestStart, bestEnd);
+    }
+
+    /**
+     * Adds a state and its epsilon closure to a set, tagging the states that
+     * are new to the set with an origin.
+     */
+    private void close(int id, StateSet set, int[] tags, int origin) {
+        if (!set.add(id)) {
+            return;
+        }
+        tags[id] = origin;
+        int top = 0;
+        stack[top++] = id;
+        while (top > 0) {
+            int q = stack[--top];
+            for (int i = nfa.epsIndex[q], end = nfa.epsIndex[q + 1]; i < end; i++) {
+                int to = nfa.epsTargets[i];
+                if (set.add(to)) {
+                    tags[to] = origin;
+                    stack[top++] = to;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package fa.nfa;
+
+/**
+ * Receives per-step metrics from an NFA simulation, for example to collect
+ * statistics on nondeterminism while inputs are being matched. An observer is
+ * attached with {@link NFAMatcher#observe(SimulationObserver)} or passed to
+ * {@link CompiledNFA#accepts(String, SimulationObserver)}; simulations without
+ * an observer do not pay for the callbacks.
+ */
+@FunctionalInterface
+public interface SimulationObserver {
+    /**
+     * Called once the active states after a prefix of the input are known:
+     * at step 0 for the epsilon closure of the start state, then at step i
+     * after the i-th character has been consumed.
+     *
+     * @param step the number of characters consumed so far
+     * @param symbol the character consumed at this step, or 0 at step 0
+     * @param activeStates the number of active states after this step
+     * @param closureWork the number of epsilon edges followed in this step
+     */
+    void onStep(int step, char symbol, int activeStates, int closureWork);
+}
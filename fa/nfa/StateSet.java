@@ -0,0 +1,59 @@
+package fa.nfa;
+
+/**
+ * A set of integer state ids backed by a bit set for membership tests and a
+ * dense array for iteration, so that both adding and clearing cost time
+ * proportional to the number of active states rather than to the NFA size.
+ */
+final class StateSet {
+    final int[] dense;
+    final long[] bits;
+    int size;
+
+    /**
+     * Creates an empty set able to hold ids 0 to capacity - 1.
+     *
+     * @param capacity the number of states in the NFA
+     */
+    StateSet(int capacity) {
+        dense = new int[capacity];
+        bits = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Adds a state id to the set.
+     *
+     * @param id the state id
+     * @return true if the id was not already present
+     */
+    boolean add(int id) {
+        long mask = 1L << id;
+        int word = id >>> 6;
+        if ((bits[word] & mask) != 0) {
+            return false;
+        }
+        bits[word] |= mask;
+        dense[size++] = id;
+        return true;
+    }
+
+    /**
+     * Checks whether a state id is in the set.
+     *
+     * @param id the state id
+     * @return true if the id is present
+     */
+    boolean contains(int id) {
+        return (bits[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Removes every id from the set.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            bits[dense[i] >>> 6] = 0;
+        }
+        size = 0;
+    }
+}
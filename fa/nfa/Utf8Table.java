@@ -0,0 +1,104 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * A byte-level trie over the UTF-8 encodings of the characters of a
+ * {@link ColumnMap}, so that UTF-8 input can be matched without decoding it
+ * into chars first. Each node has one entry per byte value: a column when the
+ * byte completes the encoding of a symbol, a child node when the symbol needs
+ * more bytes, or {@link #INVALID} when no symbol is encoded that way.
+ *
+ * Surrogate chars have no UTF-8 encoding of their own and are left out;
+ * {@link NFAMatcher} decodes 4-byte sequences into surrogate pairs instead.
+ */
+final class Utf8Table {
+    /** Entry of a byte that cannot continue any symbol. */
+    static final int INVALID = -1;
+
+    // Entries >= 0 are columns; child node k is stored as -(k + 2)
+    private int[] table;
+    private int nodeCount;
+
+    /**
+     * Builds the trie for every character of a column map.
+     *
+     * @param columns the column map of the alphabet
+     */
+    Utf8Table(ColumnMap columns) {
+        table = new int[256];
+        Arrays.fill(table, INVALID);
+        nodeCount = 1;
+        for (int i = 0; i < columns.rangeCount(); i++) {
+            for (int c = columns.rangeStart(i); c <= columns.rangeEnd(i); c++) {
+                add((char) c, columns.rangeColumn(i));
+            }
+        }
+    }
+
+    /**
+     * Adds the encoding of one symbol.
+     */
+    private void add(char c, int column) {
+        if (c < 0x80) {
+            table[c] = column;
+        } else if (c < 0x800) {
+            int node = child(0, 0xC0 | (c >>> 6));
+            table[node * 256 + (0x80 | (c & 0x3F))] = column;
+        } else if (!Character.isSurrogate(c)) {
+            int node = child(0, 0xE0 | (c >>> 12));
+            node = child(node, 0x80 | ((c >>> 6) & 0x3F));
+            table[node * 256 + (0x80 | (c & 0x3F))] = column;
+        }
+    }
+
+    /**
+     * Gets the child of a node on a byte, creating it if needed.
+     */
+    private int child(int node, int b) {
+        int entry = table[node * 256 + b];
+        if (entry <= -2) {
+            return -entry - 2;
+        }
+        int created = nodeCount++;
+        if (nodeCount * 256 > table.length) {
+            int oldLength = table.length;
+            table = Arrays.copyOf(table, oldLength * 2);
+            Arrays.fill(table, oldLength, table.length, INVALID);
+        }
+        table[node * 256 + b] = -created - 2;
+        return created;
+    }
+
+    /**
+     * Looks up the entry for a byte in a node.
+     *
+     * @param node the current node, 0 between symbols
+     * @param b the input byte
+     * @return a column (>= 0), {@link #INVALID}, or a child node encoded by
+     *         {@link #isNode} and {@link #node}
+     */
+    int entry(int node, byte b) {
+        return table[node * 256 + (b & 0xFF)];
+    }
+
+    /**
+     * Checks if an entry is a child node.
+     *
+     * @param entry a value returned by {@link #entry}
+     * @return true if it is a child node
+     */
+    static boolean isNode(int entry) {
+        return entry <= -2;
+    }
+
+    /**
+     * Decodes the child node of an entry.
+     *
+     * @param entry a value for which {@link #isNode} is true
+     * @return the child node
+     */
+    static int node(int entry) {
+        return -entry - 2;
+    }
+}
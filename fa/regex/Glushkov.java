@@ -0,0 +1,173 @@
+package fa.regex;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import fa.nfa.NFABuilder;
+
+/**
+ * Glushkov's position automaton of a syntax tree. Every character set in
+ * the pattern is a position with its own state, entered only on the
+ * characters of that set, and state 0 is the start. A state has a
+ * transition to each position that can follow it in a match, so for m
+ * positions the NFA has exactly m + 1 states and no epsilon transitions.
+ */
+final class Glushkov {
+    private final List<Node> positions = new ArrayList<>();
+    private final List<BitSet> follow = new ArrayList<>();
+
+    /**
+     * Whether a node matches the empty string, and the positions that can
+     * start and end its matches.
+     */
+    private static final class Sets {
+        final boolean nullable;
+        final BitSet first;
+        final BitSet last;
+
+        Sets(boolean nullable, BitSet first, BitSet last) {
+            this.nullable = nullable;
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    private Glushkov() {
+    }
+
+    /**
+     * Builds the position automaton of a syntax tree into a builder whose
+     * start state is 0 and whose state i + 1 is position i.
+     *
+     * @param root the syntax tree
+     * @return a builder holding the NFA
+     */
+    static NFABuilder build(Node root) {
+        Glushkov glushkov = new Glushkov();
+        Sets sets = glushkov.visit(root);
+        List<Node> positions = glushkov.positions;
+        int count = glushkov.rangesInto(sets.first);
+        for (BitSet targets : glushkov.follow) {
+            count += glushkov.rangesInto(targets);
+        }
+
+        int[] from = new int[count];
+        char[] low = new char[count];
+        char[] high = new char[count];
+        int[] to = new int[count];
+        int[] edges = {0};
+        glushkov.connect(0, sets.first, from, low, high, to, edges);
+        for (int p = 0; p < positions.size(); p++) {
+            glushkov.connect(p + 1, glushkov.follow.get(p), from, low, high, to, edges);
+        }
+
+        NFABuilder builder = new NFABuilder(positions.size() + 1, edges[0]);
+        Thompson.addAll(builder, from, low, high, to, edges[0]);
+        builder.start(0);
+        if (sets.nullable) {
+            builder.finals(0);
+        }
+        for (int p = sets.last.nextSetBit(0); p >= 0; p = sets.last.nextSetBit(p + 1)) {
+            builder.finals(p + 1);
+        }
+        return builder;
+    }
+
+    /**
+     * Counts the transitions into a set of positions from one state.
+     */
+    private int rangesInto(BitSet targets) {
+        int count = 0;
+        for (int p = targets.nextSetBit(0); p >= 0; p = targets.nextSetBit(p + 1)) {
+            count += positions.get(p).lows.length;
+        }
+        return count;
+    }
+
+    /**
+     * Adds transitions from a state into each of a set of positions, on the
+     * characters of that position.
+     */
+    private void connect(int state, BitSet targets, int[] from, char[] low, char[] high, int[] to, int[] edges) {
+        for (int p = targets.nextSetBit(0); p >= 0; p = targets.nextSetBit(p + 1)) {
+            Node position = positions.get(p);
+            for (int i = 0; i < position.lows.length; i++) {
+                from[edges[0]] = state;
+                low[edges[0]] = position.lows[i];
+                high[edges[0]] = position.highs[i];
+                to[edges[0]++] = p + 1;
+            }
+        }
+    }
+
+    /**
+     * Numbers the positions of a node from left to right, adds the follow
+     * pairs that arise inside it, and returns its nullable, first and last
+     * sets.
+     */
+    private Sets visit(Node node) {
+        switch (node.kind) {
+            case EMPTY:
+                return new Sets(true, new BitSet(), new BitSet());
+            case CHARS: {
+                int p = positions.size();
+                positions.add(node);
+                follow.add(new BitSet());
+                BitSet only = new BitSet();
+                only.set(p);
+                return new Sets(false, only, (BitSet) only.clone());
+            }
+            case CONCAT: {
+                Sets result = visit(node.children.get(0));
+                for (int i = 1; i < node.children.size(); i++) {
+                    Sets next = visit(node.children.get(i));
+                    addFollow(result.last, next.first);
+                    BitSet first = result.first;
+                    if (result.nullable) {
+                        first.or(next.first);
+                    }
+                    BitSet last = next.last;
+                    if (next.nullable) {
+                        last.or(result.last);
+                    }
+                    result = new Sets(result.nullable && next.nullable, first, last);
+                }
+                return result;
+            }
+            case ALT: {
+                boolean nullable = false;
+                BitSet first = new BitSet();
+                BitSet last = new BitSet();
+                for (Node child : node.children) {
+                    Sets sets = visit(child);
+                    nullable |= sets.nullable;
+                    first.or(sets.first);
+                    last.or(sets.last);
+                }
+                return new Sets(nullable, first, last);
+            }
+            case STAR:
+            case PLUS:
+            case OPTIONAL: {
+                Sets sets = visit(node.child());
+                if (node.kind != Node.Kind.OPTIONAL) {
+                    addFollow(sets.last, sets.first);
+                }
+                return new Sets(sets.nullable || node.kind != Node.Kind.PLUS, sets.first, sets.last);
+            }
+            default:
+                throw new IllegalStateException("unknown node " + node.kind);
+        }
+    }
+
+    /**
+     * Lets every position in {@code ends} be followed by every position in
+     * {@code starts}.
+     */
+    private void addFollow(BitSet ends, BitSet starts) {
+        for (int p = ends.nextSetBit(0); p >= 0; p = ends.nextSetBit(p + 1)) {
+            follow.get(p).or(starts);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package fa.regex;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A node of the syntax tree of a regular expression. Character nodes hold a
+ * set of characters as sorted, disjoint, non-adjacent ranges; the other
+ * kinds combine their children.
+ */
+final class Node {
+    /**
+     * The kinds of node.
+     */
+    enum Kind {
+        /** Matches only the empty string. */
+        EMPTY,
+        /** Matches one character from a set. */
+        CHARS,
+        /** Matches its children one after another. */
+        CONCAT,
+        /** Matches any one of its children. */
+        ALT,
+        /** Matches its child zero or more times. */
+        STAR,
+        /** Matches its child one or more times. */
+        PLUS,
+        /** Matches its child zero times or once. */
+        OPTIONAL
+    }
+
+    final Kind kind;
+    final List<Node> children;
+    final char[] lows;
+    final char[] highs;
+
+    private Node(Kind kind, List<Node> children, char[] lows, char[] highs) {
+        this.kind = kind;
+        this.children = children;
+        this.lows = lows;
+        this.highs = highs;
+    }
+
+    /**
+     * Creates a node that matches only the empty string.
+     *
+     * @return the node
+     */
+    static Node empty() {
+        return new Node(Kind.EMPTY, Collections.emptyList(), null, null);
+    }
+
+    /**
+     * Creates a node that matches one character from a set.
+     *
+     * @param lows the first character of each range, sorted
+     * @param highs the last character of each range
+     * @return the node
+     */
+    static Node chars(char[] lows, char[] highs) {
+        return new Node(Kind.CHARS, Collections.emptyList(), lows, highs);
+    }
+
+    /**
+     * Creates a node that combines its children.
+     *
+     * @param kind CONCAT or ALT
+     * @param children the children, in order
+     * @return the node
+     */
+    static Node of(Kind kind, List<Node> children) {
+        return new Node(kind, Collections.unmodifiableList(children), null, null);
+    }
+
+    /**
+     * Creates a node that repeats its child.
+     *
+     * @param kind STAR, PLUS or OPTIONAL
+     * @param child the repeated node
+     * @return the node
+     */
+    static Node repeat(Kind kind, Node child) {
+        return new Node(kind, Collections.singletonList(child), null, null);
+    }
+
+    /**
+     * Gets the only child of a repetition.
+     *
+     * @return the child
+     */
+    Node child() {
+        return children.get(0);
+    }
+}
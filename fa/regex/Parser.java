@@ -0,0 +1,285 @@
+package fa.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A recursive-descent parser from the text of a regular expression to its
+ * syntax tree. The grammar, from lowest to highest precedence, is
+ * <pre>
+ * alternation := concatenation ('|' concatenation)*
+ * concatenation := repetition*
+ * repetition := atom ('*' | '+' | '?')*
+ * atom := '(' alternation ')' | '[' class ']' | '.' | '\' escape | character
+ * </pre>
+ * where a class is a list of characters, ranges such as a-z and escapes,
+ * negated by a leading '^'. The escapes \d, \w and \s stand for digits, word
+ * characters and white space, \n, \t, \r and \f for control characters, and
+ * a backslash before any other non-alphanumeric character quotes it.
+ */
+final class Parser {
+    private static final char MAX = Character.MAX_VALUE;
+
+    private final String pattern;
+    private int pos;
+
+    private Parser(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Parses a regular expression.
+     *
+     * @param pattern the text of the expression
+     * @return the syntax tree
+     * @throws IllegalArgumentException if the pattern is malformed
+     */
+    static Node parse(String pattern) {
+        Parser parser = new Parser(pattern);
+        Node root = parser.alternation();
+        if (parser.pos < pattern.length()) {
+            throw parser.error("unmatched ')'");
+        }
+        return root;
+    }
+
+    private Node alternation() {
+        List<Node> branches = new ArrayList<>();
+        branches.add(concatenation());
+        while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+            pos++;
+            branches.add(concatenation());
+        }
+        return branches.size() == 1 ? branches.get(0) : Node.of(Node.Kind.ALT, branches);
+    }
+
+    private Node concatenation() {
+        List<Node> items = new ArrayList<>();
+        while (pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+            items.add(repetition());
+        }
+        if (items.isEmpty()) {
+            return Node.empty();
+        }
+        return items.size() == 1 ? items.get(0) : Node.of(Node.Kind.CONCAT, items);
+    }
+
+    private Node repetition() {
+        Node node = atom();
+        while (pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            if (c == '*') {
+                node = Node.repeat(Node.Kind.STAR, node);
+            } else if (c == '+') {
+                node = Node.repeat(Node.Kind.PLUS, node);
+            } else if (c == '?') {
+                node = Node.repeat(Node.Kind.OPTIONAL, node);
+            } else {
+                break;
+            }
+            pos++;
+        }
+        return node;
+    }
+
+    private Node atom() {
+        char c = pattern.charAt(pos++);
+        switch (c) {
+            case '(':
+                Node inner = alternation();
+                if (pos >= pattern.length()) {
+                    throw error("missing ')'");
+                }
+                pos++;
+                return inner;
+            case '[':
+                return charClass();
+            case '.':
+                return Node.chars(new char[] {0}, new char[] {MAX});
+            case '\\':
+                Ranges escaped = new Ranges();
+                escape(escaped);
+                return escaped.toNode();
+            case '*':
+            case '+':
+            case '?':
+                pos--;
+                throw error("nothing to repeat before '" + c + "'");
+            default:
+                return Node.chars(new char[] {c}, new char[] {c});
+        }
+    }
+
+    /**
+     * Parses a character class after its opening '['. A ']' right after the
+     * '[' or '[^' is a literal, as is a '-' at either end of the class.
+     */
+    private Node charClass() {
+        boolean negated = pos < pattern.length() && pattern.charAt(pos) == '^';
+        if (negated) {
+            pos++;
+        }
+        Ranges ranges = new Ranges();
+        boolean first = true;
+        while (true) {
+            if (pos >= pattern.length()) {
+                throw error("missing ']'");
+            }
+            char c = pattern.charAt(pos);
+            if (c == ']' && !first) {
+                pos++;
+                break;
+            }
+            first = false;
+            pos++;
+            char low;
+            if (c == '\\') {
+                int before = ranges.count;
+                if (escape(ranges) || pos >= pattern.length() || pattern.charAt(pos) != '-') {
+                    continue;
+                }
+                // A single escaped character may start a range
+                low = ranges.lows[before];
+                ranges.count = before;
+            } else {
+                low = c;
+            }
+            if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                pos++;
+                char high = pattern.charAt(pos++);
+                if (high == '\\') {
+                    Ranges end = new Ranges();
+                    if (escape(end)) {
+                        throw error("class escape cannot end a range");
+                    }
+                    high = end.lows[0];
+                }
+                if (high < low) {
+                    throw error("empty range " + low + "-" + high);
+                }
+                ranges.add(low, high);
+            } else {
+                ranges.add(low, low);
+            }
+        }
+        return negated ? ranges.complement().toNode() : ranges.toNode();
+    }
+
+    /**
+     * Parses an escape after its backslash and adds its characters.
+     *
+     * @param ranges the set to add to
+     * @return true if the escape stands for a class rather than one character
+     */
+    private boolean escape(Ranges ranges) {
+        if (pos >= pattern.length()) {
+            throw error("trailing '\\'");
+        }
+        char c = pattern.charAt(pos++);
+        switch (c) {
+            case 'd':
+                ranges.add('0', '9');
+                return true;
+            case 'w':
+                ranges.add('0', '9');
+                ranges.add('A', 'Z');
+                ranges.add('_', '_');
+                ranges.add('a', 'z');
+                return true;
+            case 's':
+                ranges.add('\t', '\r');
+                ranges.add(' ', ' ');
+                return true;
+            case 'n':
+                ranges.add('\n', '\n');
+                return false;
+            case 't':
+                ranges.add('\t', '\t');
+                return false;
+            case 'r':
+                ranges.add('\r', '\r');
+                return false;
+            case 'f':
+                ranges.add('\f', '\f');
+                return false;
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    pos--;
+                    throw error("unknown escape '\\" + c + "'");
+                }
+                ranges.add(c, c);
+                return false;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at index " + pos + " in \"" + pattern + "\"");
+    }
+
+    /**
+     * A growable list of character ranges, normalized into a set when it is
+     * turned into a node.
+     */
+    private static final class Ranges {
+        char[] lows = new char[4];
+        char[] highs = new char[4];
+        int count;
+
+        void add(char low, char high) {
+            if (count == lows.length) {
+                lows = Arrays.copyOf(lows, count * 2);
+                highs = Arrays.copyOf(highs, count * 2);
+            }
+            lows[count] = low;
+            highs[count++] = high;
+        }
+
+        /**
+         * Sorts the ranges and merges those that overlap or touch.
+         */
+        Ranges normalize() {
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                packed[i] = ((long) lows[i] << 16) | highs[i];
+            }
+            Arrays.sort(packed);
+            Ranges merged = new Ranges();
+            for (long range : packed) {
+                char low = (char) (range >>> 16);
+                char high = (char) range;
+                int last = merged.count - 1;
+                if (last >= 0 && low <= merged.highs[last] + 1) {
+                    merged.highs[last] = (char) Math.max(merged.highs[last], high);
+                } else {
+                    merged.add(low, high);
+                }
+            }
+            return merged;
+        }
+
+        /**
+         * Gets every character not in the ranges.
+         */
+        Ranges complement() {
+            Ranges set = normalize();
+            Ranges gaps = new Ranges();
+            int next = 0;
+            for (int i = 0; i < set.count; i++) {
+                if (set.lows[i] > next) {
+                    gaps.add((char) next, (char) (set.lows[i] - 1));
+                }
+                next = set.highs[i] + 1;
+            }
+            if (next <= MAX) {
+                gaps.add((char) next, MAX);
+            }
+            return gaps;
+        }
+
+        Node toNode() {
+            Ranges set = normalize();
+            return Node.chars(Arrays.copyOf(set.lows, set.count), Arrays.copyOf(set.highs, set.count));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package fa.regex;
+
+import fa.nfa.CompiledNFA;
+import fa.nfa.NFA;
+import fa.nfa.NFABuilder;
+
+/**
+ * A parsed regular expression that compiles to an NFA. The syntax covers
+ * concatenation, alternation with '|', grouping with parentheses, the
+ * repetitions '*', '+' and '?', the wildcard '.', character classes such as
+ * [a-z0-9] and [^"] and the escapes \d, \w, \s, \n, \t, \r and \f; a
+ * backslash quotes any other non-alphanumeric character. A pattern must
+ * match the whole input.
+ *
+ * The automaton is written straight into an {@link NFABuilder}, so there are
+ * no state name lookups or per-edge sets while it is built; use
+ * {@link #compile()} for the compact {@link CompiledNFA} or {@link #toNFA()}
+ * for an ordinary NFA, both by Thompson's construction, or
+ * {@link #glushkov()} for the position automaton. Neither has epsilon
+ * transitions, so an 'e' in the input is an ordinary character. Character
+ * classes become range transitions, and a literal 'e' is a range transition
+ * too, so it is never an epsilon transition.
+ */
+public final class Regex {
+    private final String pattern;
+    private final Node root;
+
+    private Regex(String pattern, Node root) {
+        this.pattern = pattern;
+        this.root = root;
+    }
+
+    /**
+     * Parses a regular expression.
+     *
+     * @param pattern the text of the expression
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the pattern is malformed, with the
+     *         index of the problem in the message
+     */
+    public static Regex parse(String pattern) {
+        return new Regex(pattern, Parser.parse(pattern));
+    }
+
+    /**
+     * Builds the NFA by Thompson's construction. Its epsilon transitions are
+     * removed before it is emitted, since an 'e' in the input would follow
+     * them, so the result has the start state, numbered 0, and one state per
+     * character set in the pattern.
+     *
+     * @return a builder holding the NFA
+     */
+    public NFABuilder thompson() {
+        return Thompson.build(root);
+    }
+
+    /**
+     * Builds the NFA by Glushkov's construction, the position automaton of
+     * the pattern. Each character set in the pattern is a position with its
+     * own state, so for m positions there are exactly m + 1 states, and there
+     * are no epsilon transitions: every epsilon closure is the state alone,
+     * and short patterns fit the bit-parallel simulation.
+     *
+     * @return a builder holding the NFA
+     */
+    public NFABuilder glushkov() {
+        return Glushkov.build(root);
+    }
+
+    /**
+     * Builds an ordinary NFA by Thompson's construction.
+     *
+     * @return a new NFA accepting the strings the pattern matches
+     */
+    public NFA toNFA() {
+        return thompson().build();
+    }
+
+    /**
+     * Builds the compiled form of the NFA by Thompson's construction,
+     * without creating any NFAState objects.
+     *
+     * @return a new compiled NFA accepting the strings the pattern matches
+     */
+    public CompiledNFA compile() {
+        return thompson().compile();
+    }
+
+    /**
+     * Gets the text of the expression.
+     *
+     * @return the pattern
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,258 @@
+package fa.regex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import fa.nfa.NFABuilder;
+
+/**
+ * Thompson's construction from a syntax tree to an NFA, emitted straight
+ * into an {@link NFABuilder}. Each node is compiled from a given state and
+ * returns the state where it ends, so a concatenation just chains its parts
+ * and needs no epsilon transitions; only alternation and repetition add
+ * them, which keeps epsilon closures short.
+ *
+ * The symbol 'e' labels epsilon transitions in an NFA, and an 'e' in the
+ * input also follows them, so an NFA with epsilon transitions would accept
+ * stray 'e' characters. The epsilon transitions are therefore removed over
+ * the short closures before the NFA is emitted, keeping only the start
+ * state and the states that characters lead to.
+ */
+final class Thompson {
+    private int stateCount;
+    private int[] charFrom = new int[16];
+    private char[] charLow = new char[16];
+    private char[] charHigh = new char[16];
+    private int[] charTo = new int[16];
+    private int charCount;
+    private int[] epsFrom = new int[16];
+    private int[] epsTo = new int[16];
+    private int epsCount;
+
+    private Thompson() {
+    }
+
+    /**
+     * Compiles a syntax tree into a builder whose start state is 0.
+     *
+     * @param root the syntax tree
+     * @return a builder holding the NFA
+     */
+    static NFABuilder build(Node root) {
+        Thompson thompson = new Thompson();
+        thompson.stateCount = 1;
+        int end = thompson.compile(root, 0);
+        return thompson.emitWithoutEpsilons(end);
+    }
+
+    /**
+     * Adds the transitions of a node.
+     *
+     * @param node the node to compile
+     * @param from the state the node starts at
+     * @return the state the node ends at
+     */
+    private int compile(Node node, int from) {
+        switch (node.kind) {
+            case EMPTY:
+                return from;
+            case CHARS: {
+                int to = stateCount++;
+                for (int i = 0; i < node.lows.length; i++) {
+                    addChars(from, node.lows[i], node.highs[i], to);
+                }
+                return to;
+            }
+            case CONCAT: {
+                int at = from;
+                for (Node child : node.children) {
+                    at = compile(child, at);
+                }
+                return at;
+            }
+            case ALT: {
+                int[] ends = new int[node.children.size()];
+                for (int i = 0; i < ends.length; i++) {
+                    ends[i] = compile(node.children.get(i), from);
+                }
+                int join = stateCount++;
+                for (int end : ends) {
+                    addEpsilon(end, join);
+                }
+                return join;
+            }
+            case STAR: {
+                // The loop gets its own head so that the states before it
+                // cannot be re-entered from the loop
+                int head = stateCount++;
+                addEpsilon(from, head);
+                addEpsilon(compile(node.child(), head), head);
+                return head;
+            }
+            case PLUS: {
+                int head = stateCount++;
+                addEpsilon(from, head);
+                int end = compile(node.child(), head);
+                addEpsilon(end, head);
+                return end;
+            }
+            case OPTIONAL: {
+                int join = stateCount++;
+                addEpsilon(from, join);
+                addEpsilon(compile(node.child(), from), join);
+                return join;
+            }
+            default:
+                throw new IllegalStateException("unknown node " + node.kind);
+        }
+    }
+
+    private void addChars(int from, char low, char high, int to) {
+        if (charCount == charFrom.length) {
+            int grown = charCount * 2;
+            charFrom = Arrays.copyOf(charFrom, grown);
+            charLow = Arrays.copyOf(charLow, grown);
+            charHigh = Arrays.copyOf(charHigh, grown);
+            charTo = Arrays.copyOf(charTo, grown);
+        }
+        charFrom[charCount] = from;
+        charLow[charCount] = low;
+        charHigh[charCount] = high;
+        charTo[charCount++] = to;
+    }
+
+    private void addEpsilon(int from, int to) {
+        if (epsCount == epsFrom.length) {
+            epsFrom = Arrays.copyOf(epsFrom, epsCount * 2);
+            epsTo = Arrays.copyOf(epsTo, epsCount * 2);
+        }
+        epsFrom[epsCount] = from;
+        epsTo[epsCount++] = to;
+    }
+
+    /**
+     * Emits an equivalent NFA without epsilon transitions. Each kept state
+     * takes the character transitions of every state in its epsilon
+     * closure, and is final if its closure holds the end state.
+     */
+    private NFABuilder emitWithoutEpsilons(int end) {
+        int[] epsIndex = index(epsFrom, epsCount);
+        int[] epsTargets = scatter(epsIndex, epsFrom, epsTo, epsCount);
+        int[] charIndex = index(charFrom, charCount);
+        int[] charOrder = new int[charCount];
+        int[] next = Arrays.copyOf(charIndex, stateCount);
+        for (int i = 0; i < charCount; i++) {
+            charOrder[next[charFrom[i]]++] = i;
+        }
+
+        int[] ids = new int[stateCount];
+        Arrays.fill(ids, -1);
+        ids[0] = 0;
+        int kept = 1;
+        for (int i = 0; i < charCount; i++) {
+            if (ids[charTo[i]] < 0) {
+                ids[charTo[i]] = kept++;
+            }
+        }
+
+        int[] from = new int[charCount];
+        char[] low = new char[charCount];
+        char[] high = new char[charCount];
+        int[] to = new int[charCount];
+        int count = 0;
+        int[] finals = new int[kept];
+        int finalCount = 0;
+        int[] seen = new int[stateCount];
+        int[] stack = new int[stateCount];
+        for (int q = 0; q < stateCount; q++) {
+            if (ids[q] < 0) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = q;
+            seen[q] = q + 1;
+            boolean isFinal = false;
+            while (top > 0) {
+                int p = stack[--top];
+                isFinal |= p == end;
+                for (int k = charIndex[p]; k < charIndex[p + 1]; k++) {
+                    int i = charOrder[k];
+                    if (count == from.length) {
+                        int grown = count * 2 + 1;
+                        from = Arrays.copyOf(from, grown);
+                        low = Arrays.copyOf(low, grown);
+                        high = Arrays.copyOf(high, grown);
+                        to = Arrays.copyOf(to, grown);
+                    }
+                    from[count] = ids[q];
+                    low[count] = charLow[i];
+                    high[count] = charHigh[i];
+                    to[count++] = ids[charTo[i]];
+                }
+                for (int k = epsIndex[p]; k < epsIndex[p + 1]; k++) {
+                    int t = epsTargets[k];
+                    if (seen[t] != q + 1) {
+                        seen[t] = q + 1;
+                        stack[top++] = t;
+                    }
+                }
+            }
+            if (isFinal) {
+                finals[finalCount++] = ids[q];
+            }
+        }
+
+        NFABuilder builder = new NFABuilder(kept, count);
+        addAll(builder, from, low, high, to, count);
+        return builder.start(0).finals(Arrays.copyOf(finals, finalCount));
+    }
+
+    /**
+     * Adds character transitions to a builder. A single character other
+     * than 'e' becomes an ordinary transition on a symbol of sigma; 'e' and
+     * longer ranges become range transitions, which are never epsilon.
+     */
+    static void addAll(NFABuilder builder, int[] from, char[] low, char[] high, int[] to, int count) {
+        BitSet inSigma = new BitSet();
+        StringBuilder sigma = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (low[i] == high[i] && low[i] != 'e') {
+                builder.transition(from[i], low[i], to[i]);
+                if (!inSigma.get(low[i])) {
+                    inSigma.set(low[i]);
+                    sigma.append(low[i]);
+                }
+            } else {
+                builder.transition(from[i], low[i], high[i], to[i]);
+            }
+        }
+        builder.sigma(sigma.toString().toCharArray());
+    }
+
+    /**
+     * Counts the edges out of each state and turns the counts into start
+     * offsets.
+     */
+    private int[] index(int[] rows, int count) {
+        int[] index = new int[stateCount + 1];
+        for (int i = 0; i < count; i++) {
+            index[rows[i] + 1]++;
+        }
+        for (int q = 0; q < stateCount; q++) {
+            index[q + 1] += index[q];
+        }
+        return index;
+    }
+
+    /**
+     * Lays the targets out in the order given by an index.
+     */
+    private int[] scatter(int[] index, int[] rows, int[] targets, int count) {
+        int[] laidOut = new int[count];
+        int[] next = Arrays.copyOf(index, stateCount);
+        for (int i = 0; i < count; i++) {
+            laidOut[next[rows[i]]++] = targets[i];
+        }
+        return laidOut;
+    }
+}
@@ -0,0 +1,215 @@
+package test.dfa;
+
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.dfa.DFA;
+import fa.nfa.NFA;
+
+public class DFATest {
+
+	/**
+	 * Helper method to create a DFA (dfa1) over {0, 1} that accepts strings
+	 * ending in '1'. It has two states: "a" (start) and "b" (final).
+	 */
+	private DFA dfa1() {
+		DFA dfa = new DFA();
+
+		dfa.addSigma('0');
+		dfa.addSigma('1');
+
+		assertTrue(dfa.addState("a"));
+		assertTrue(dfa.setStart("a"));
+		assertTrue(dfa.addState("b"));
+		assertTrue(dfa.setFinal("b"));
+
+		// Check invalid state additions and settings
+		assertFalse(dfa.addState("a"));
+		assertFalse(dfa.setStart("c"));
+		assertFalse(dfa.setFinal("d"));
+
+		assertTrue(dfa.addTransition("a", "a", '0'));
+		assertTrue(dfa.addTransition("a", "b", '1'));
+		assertTrue(dfa.addTransition("b", "a", '0'));
+		assertTrue(dfa.addTransition("b", "b", '1'));
+
+		// Test invalid transitions
+		assertFalse(dfa.addTransition("c", "a", '0'));
+		assertFalse(dfa.addTransition("a", "c", '0'));
+		assertFalse(dfa.addTransition("a", "b", '2'));
+
+		return dfa;
+	}
+
+	/**
+	 * Helper method to create an NFA (nfa1) over {0, 1} whose language is the
+	 * strings with a '1' in the second to last position.
+	 */
+	private NFA nfa1() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		assertTrue(nfa.addState("p"));
+		assertTrue(nfa.setStart("p"));
+		assertTrue(nfa.addState("q"));
+		assertTrue(nfa.addState("r"));
+		assertTrue(nfa.setFinal("r"));
+		assertTrue(nfa.addTransition("p", Set.of("p"), '0'));
+		assertTrue(nfa.addTransition("p", Set.of("p", "q"), '1'));
+		assertTrue(nfa.addTransition("q", Set.of("r"), '0'));
+		assertTrue(nfa.addTransition("q", Set.of("r"), '1'));
+		return nfa;
+	}
+
+	/**
+	 * Test 1.1: Verify the states, sigma and transitions of dfa1.
+	 */
+	@Test
+	public void test1_1() {
+		DFA dfa = dfa1();
+		assertEquals(dfa.getState("a").getName(), "a");
+		assertNull(dfa.getState("c"));
+		assertTrue(dfa.isStart("a"));
+		assertFalse(dfa.isStart("b"));
+		assertTrue(dfa.isFinal("b"));
+		assertFalse(dfa.isFinal("a"));
+		assertEquals(dfa.getSigma(), Set.of('0', '1'));
+		assertEquals(dfa.getToState(dfa.getState("a"), '1'), dfa.getState("b"));
+		assertNull(dfa.getToState(dfa.getState("a"), '2'));
+		System.out.println("dfa1 correctness done");
+	}
+
+	/**
+	 * Test 1.2: Test whether dfa1 accepts or rejects specific strings.
+	 */
+	@Test
+	public void test1_2() {
+		DFA dfa = dfa1();
+		assertFalse(dfa.accepts(""));
+		assertTrue(dfa.accepts("1"));
+		assertFalse(dfa.accepts("10"));
+		assertTrue(dfa.accepts("0101"));
+		assertFalse(dfa.accepts("0121"));  // '2' is not in sigma
+
+		// Adding a symbol after the transitions keeps them in place
+		dfa.addSigma('2');
+		assertTrue(dfa.accepts("0101"));
+		assertFalse(dfa.accepts("0121"));  // No transition on '2'
+		System.out.println("dfa1 accepts done");
+	}
+
+	/**
+	 * Test 2.1: The subset construction of nfa1 accepts the same strings.
+	 */
+	@Test
+	public void test2_1() {
+		NFA nfa = nfa1();
+		DFA dfa = nfa.toDFA();
+		assertEquals(dfa.getStateCount(), 4);
+		assertTrue(dfa.isStart("[p]"));
+		assertTrue(dfa.isFinal("[p, q, r]"));
+		for (String s : new String[] {"", "1", "10", "11", "010", "0110", "1101", "100"}) {
+			assertEquals(nfa.accepts(s), dfa.accepts(s));
+		}
+		System.out.println("nfa1 toDFA done");
+	}
+
+	/**
+	 * Test 2.2: Minimizing the subset construction of nfa1 keeps all four
+	 * states, since each remembers a different pair of last symbols.
+	 */
+	@Test
+	public void test2_2() {
+		NFA nfa = nfa1();
+		DFA min = nfa.toDFA().minimize();
+		assertEquals(min.getStateCount(), 4);
+		for (String s : new String[] {"", "1", "10", "11", "010", "0110", "1101", "100"}) {
+			assertEquals(nfa.accepts(s), min.accepts(s));
+		}
+		System.out.println("nfa1 minimize done");
+	}
+
+	/**
+	 * Test 3.1: Minimizing a DFA with redundant, unreachable and dead states.
+	 * - "a" and "c" are equivalent, "u" is unreachable and "d" can never accept.
+	 */
+	@Test
+	public void test3_1() {
+		DFA dfa = new DFA();
+		dfa.addSigma('0');
+		dfa.addSigma('1');
+		for (String name : new String[] {"a", "b", "c", "d", "u"}) {
+			assertTrue(dfa.addState(name));
+		}
+		assertTrue(dfa.setStart("a"));
+		assertTrue(dfa.setFinal("b"));
+		assertTrue(dfa.setFinal("u"));
+		assertTrue(dfa.addTransition("a", "b", '1'));
+		assertTrue(dfa.addTransition("a", "c", '0'));
+		assertTrue(dfa.addTransition("c", "b", '1'));
+		assertTrue(dfa.addTransition("c", "a", '0'));
+		assertTrue(dfa.addTransition("b", "d", '0'));
+		assertTrue(dfa.addTransition("d", "d", '1'));
+		assertTrue(dfa.addTransition("u", "a", '0'));
+
+		DFA min = dfa.minimize();
+		assertEquals(min.getStateCount(), 2);
+		assertTrue(min.isStart("a"));
+		assertTrue(min.isFinal("b"));
+		assertNull(min.getState("c"));
+		assertNull(min.getToState(min.getState("b"), '0'));  // The dead state is left out
+		assertTrue(min.accepts("0001"));
+		assertFalse(min.accepts("010"));
+		assertFalse(min.accepts("11"));
+		System.out.println("minimize done");
+	}
+
+	/**
+	 * Test 4.1: Symbol classes share one column.
+	 * - The NFA accepts any string of chars that contains "ab"; the full char
+	 *   range becomes a few classes rather than 65,536 symbols.
+	 */
+	@Test
+	public void test4_1() {
+		DFA dfa = new DFA();
+		assertTrue(dfa.addSigma('a', 'z'));
+		assertTrue(dfa.addSigma('\u00e0', '\u00ff'));
+		assertFalse(dfa.addSigma('x', '\u00e0'));  // Overlaps both classes
+		assertFalse(dfa.addSigma('\u00f0', '\u0100'));
+		assertFalse(dfa.addSigma('b', 'a'));
+		dfa.addSigma('k');  // Already in the alphabet
+		dfa.addSigma('0');
+		assertEquals(26 + 32 + 1, dfa.getSigma().size());
+		assertTrue(dfa.addState("s"));
+		assertTrue(dfa.setStart("s"));
+		assertTrue(dfa.setFinal("s"));
+		assertTrue(dfa.addTransition("s", "s", 'q'));
+		assertTrue(dfa.addTransition("s", "s", '\u00e9'));
+		assertTrue(dfa.accepts("hello\u00e0\u00ff"));
+		assertFalse(dfa.accepts("hello0"));
+		assertFalse(dfa.accepts("\u0100"));
+
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		for (String name : new String[] {"s", "m", "f"}) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.setFinal("f"));
+		assertTrue(nfa.addTransition("s", Set.of("s"), '\u0000', '\uffff'));
+		assertTrue(nfa.addTransition("s", Set.of("m"), 'a'));
+		assertTrue(nfa.addTransition("m", Set.of("f"), 'b'));
+		assertTrue(nfa.addTransition("f", Set.of("f"), '\u0000', '\uffff'));
+		DFA min = nfa.toDFA().minimize();
+		assertEquals(3, min.getStateCount());
+		assertEquals(65536, min.getSigma().size());
+		for (String s : new String[] {"ab", "\u20acab\uffff", "aab", "", "a\u0000b", "ba"}) {
+			assertEquals(nfa.accepts(s), min.accepts(s));
+		}
+		System.out.println("symbol classes done");
+	}
+}
@@ -2,11 +2,39 @@ package test.nfa;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 
+import fa.dfa.DFA;
+import fa.nfa.BitParallelNFA;
+import fa.nfa.CompiledNFA;
+import fa.nfa.LazyDFA;
+import fa.nfa.MappedNFA;
+import fa.nfa.Match;
 import fa.nfa.NFA;
+import fa.nfa.NFABuilder;
+import fa.nfa.NFAMatcher;
+import fa.nfa.PatternSet;
 
 public class NFATest {
 
@@ -2158,6 +2186,897 @@ public class NFATest {
 		System.out.println("nfa18 maxCopies done");
 	}
 
+	/**
+	 * Test C.1: The compiled form of nfa2 and nfa3 agrees with accepts.
+	 * - Confirms state ids are dense and symbols outside sigma are rejected.
+	 */
+	@Test
+	public void testCompiled1() {
+		NFA nfa = nfa2();
+		CompiledNFA compiled = nfa.compile();
+		assertEquals(compiled.getStateCount(), 5);
+		assertSame(compiled, nfa.compile());  // Cached until the NFA changes
+		assertTrue(compiled.accepts("1111"));
+		assertFalse(compiled.accepts("0001100"));
+		assertTrue(compiled.accepts("010011"));
+		assertFalse(compiled.accepts("0121"));  // '2' is not in sigma
+
+		nfa = nfa3();
+		compiled = nfa.compile();
+		assertTrue(compiled.accepts("01#11##"));
+		assertFalse(compiled.accepts("#01000###"));
+		assertTrue(nfa.addState("X"));
+		assertNotSame(compiled, nfa.compile());  // Recompiled after a change
+		System.out.println("compiled accepts done");
+	}
+
+	/**
+	 * Test C.2: Cached epsilon closures of nfa4 are refreshed after changes.
+	 * - Adds a state and an epsilon transition once the closures are cached.
+	 */
+	@Test
+	public void testClosureCache() {
+		NFA nfa = nfa4();
+		assertEquals(nfa.eClosure(nfa.getState("q")), Set.of(nfa.getState("p"), nfa.getState("q"), nfa.getState("r")));
+		assertTrue(nfa.addState("s"));
+		assertEquals(nfa.eClosure(nfa.getState("s")), Set.of(nfa.getState("s")));
+		assertTrue(nfa.addTransition("r", Set.of("s"), 'e'));
+		assertEquals(nfa.eClosure(nfa.getState("p")), Set.of(nfa.getState("p"), nfa.getState("q"), nfa.getState("r"), nfa.getState("s")));
+		assertEquals(nfa.eClosure(nfa.getState("s")), Set.of(nfa.getState("s")));
+		System.out.println("closure cache done");
+	}
+
+	/**
+	 * Test C.3: The lazily determinized matcher agrees with accepts on nfa3.
+	 * - A cache of two DFA states has to be flushed while matching.
+	 */
+	@Test
+	public void testLazyDFA() {
+		NFA nfa = nfa3();
+		for (int maxStates : new int[] {2, 64}) {
+			LazyDFA dfa = nfa.lazyDFA(maxStates);
+			assertTrue(dfa.accepts("###"));
+			assertTrue(dfa.accepts("111#00"));
+			assertTrue(dfa.accepts("01#11##"));
+			assertFalse(dfa.accepts("#01000###"));
+			assertFalse(dfa.accepts("011#00010#"));
+			assertTrue(dfa.getCachedStateCount() <= maxStates);
+		}
+		assertTrue(nfa.lazyDFA(2).getFlushCount() == 0);
+		System.out.println("lazy DFA done");
+	}
+
+	/**
+	 * Test C.4: nfa2 loaded in bulk through NFABuilder.
+	 * - Both the built NFA and the directly compiled form match nfa2.
+	 */
+	@Test
+	public void testBuilder() {
+		NFABuilder builder = new NFABuilder(5, 8)
+				.names(new String[] {"q0", "q1", "q2", "q3", "q4"})
+				.sigma('0', '1')
+				.start(0)
+				.finals(3)
+				.transitions(new int[] {0, 0, 0, 1, 2, 2, 2, 4},
+						new char[] {'0', '1', '1', 'e', '0', '1', '1', '0'},
+						new int[] {0, 0, 1, 2, 4, 2, 3, 1});
+		NFA nfa = builder.build();
+		assertTrue(nfa.isStart("q0"));
+		assertTrue(nfa.isFinal("q3"));
+		assertEquals(nfa.getSigma(), Set.of('0', '1', 'e'));
+		assertEquals(nfa.eClosure(nfa.getState("q1")), Set.of(nfa.getState("q1"), nfa.getState("q2")));
+		assertEquals(nfa.maxCopies("0001100"), 4);
+
+		CompiledNFA compiled = builder.compile();
+		for (String s : new String[] {"1111", "e", "0001100", "010011", "0101"}) {
+			assertEquals(nfa2().accepts(s), nfa.accepts(s));
+			assertEquals(nfa2().accepts(s), compiled.accepts(s));
+		}
+		System.out.println("builder done");
+	}
+
+	/**
+	 * Test C.5: nfa3 saved in the binary format and matched from the mapped file.
+	 */
+	@Test
+	public void testMapped() throws IOException {
+		NFA nfa = nfa3();
+		Path file = Files.createTempFile("nfa3", ".nfa");
+		try {
+			nfa.compile().save(file);
+			MappedNFA mapped = MappedNFA.open(file);
+			assertEquals(mapped.getStateCount(), 4);
+			assertTrue(mapped.accepts("###"));
+			assertTrue(mapped.accepts("111#00"));
+			assertTrue(mapped.accepts("01#11##"));
+			assertFalse(mapped.accepts("#01000###"));
+			assertFalse(mapped.accepts("011#00010#"));
+		} finally {
+			Files.delete(file);
+		}
+		System.out.println("mapped accepts done");
+	}
 
+	/**
+	 * Test C.6: nfa2 fed through a streaming matcher in chunks.
+	 * - The matcher is reset and reused between inputs.
+	 */
+	@Test
+	public void testMatcher() throws IOException {
+		NFA nfa = nfa2();
+		NFAMatcher matcher = nfa.matcher();
+		assertFalse(matcher.isAccepting());  // Nothing fed yet
+		matcher.feed("01");
+		matcher.feed(new char[] {'x', '0', '0', 'x'}, 1, 2);
+		assertFalse(matcher.isAccepting());
+		matcher.feed(CharBuffer.wrap("11"));
+		assertTrue(matcher.isAccepting());  // "010011" is accepted
+
+		matcher.reset();
+		matcher.feed(new StringReader("0001100"));
+		assertFalse(matcher.isAccepting());
+		matcher.reset().feed('1');
+		assertTrue(matcher.isAccepting() == nfa.accepts("1"));
+		System.out.println("matcher done");
+	}
 
+	/**
+	 * Test C.7: One nfa3 shared by several threads.
+	 * - Every thread checks accepts, maxCopies and eClosure many times.
+	 */
+	@Test
+	public void testConcurrent() throws Exception {
+		NFA nfa = nfa3();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			results.add(pool.submit(() -> {
+				boolean ok = true;
+				for (int i = 0; i < 2000; i++) {
+					ok &= nfa.accepts("01#11##") && !nfa.accepts("011#00010#");
+					ok &= nfa.maxCopies("###") == 3;
+					ok &= nfa.eClosure(nfa.getState("W")).size() == 3;
+				}
+				return ok;
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+		pool.shutdown();
+		System.out.println("concurrent matching done");
+	}
+
+	/**
+	 * Test C.8: Bit-parallel simulation of nfa3, and its absence for an NFA
+	 * with more than 64 states.
+	 */
+	@Test
+	public void testBitParallel() {
+		BitParallelNFA bits = nfa3().compile().bitParallel();
+		assertNotNull(bits);
+		assertTrue(bits.accepts("###"));
+		assertTrue(bits.accepts("111#00"));
+		assertFalse(bits.accepts("#01000###"));
+		assertFalse(bits.accepts("0a"));  // 'a' is not in sigma
+
+		// 64 states accepting the strings whose 63rd last char is 'a', with
+		// every state active at once; the large alphabet exceeds the size of
+		// the per-byte tables and steps state by state instead
+		for (int symbols : new int[] {2, 40}) {
+			char[] sigma = new char[symbols];
+			for (int i = 0; i < symbols; i++) {
+				sigma[i] = (char) ('a' + i);
+			}
+			NFABuilder builder = new NFABuilder(64).sigma(sigma).start(0).finals(63);
+			builder.transition(0, 'a', (char) ('a' + symbols - 1), 0).transition(0, 'a', 1);
+			for (int i = 1; i < 63; i++) {
+				builder.transition(i, 'a', (char) ('a' + symbols - 1), i + 1);
+			}
+			CompiledNFA wide = builder.compile();
+			assertNotNull(wide.bitParallel());
+			Random random = new Random(symbols);
+			for (int k = 0; k < 200; k++) {
+				StringBuilder input = new StringBuilder();
+				for (int i = random.nextInt(100); i > 0; i--) {
+					input.append(random.nextInt(3) == 0 ? 'a' : sigma[random.nextInt(symbols)]);
+				}
+				String s = input.toString();
+				boolean expected = s.length() >= 63 && s.charAt(s.length() - 63) == 'a';
+				assertEquals(s, expected, wide.bitParallel().accepts(s));
+				NFAMatcher matcher = wide.matcher();
+				matcher.feed(s);
+				assertEquals(s, expected, matcher.isAccepting());
+			}
+		}
+
+		// A chain of 65 states accepting exactly 64 ones
+		NFABuilder builder = new NFABuilder(65).sigma('1').start(0).finals(64);
+		for (int i = 0; i < 64; i++) {
+			builder.transition(i, '1', i + 1);
+		}
+		CompiledNFA chain = builder.compile();
+		assertNull(chain.bitParallel());
+		assertTrue(chain.accepts("1".repeat(64)));
+		assertFalse(chain.accepts("1".repeat(63)));
+		System.out.println("bit-parallel done");
+	}
+
+	/**
+	 * Test C.9: Batch acceptance of many inputs on nfa2.
+	 */
+	@Test
+	public void testAcceptsAll() {
+		NFA nfa = nfa2();
+		List<String> inputs = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			inputs.add(Integer.toBinaryString(i));
+		}
+		boolean[] results = nfa.acceptsAll(inputs);
+		BitSet accepted = nfa.acceptsAll(inputs.stream());
+		assertEquals(results.length, 1000);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(results[i], nfa.accepts(inputs.get(i)));
+			assertEquals(accepted.get(i), results[i]);
+		}
+
+		// A generated stream longer than one chunk is read as it goes
+		int count = 3 * 8192 + 5;
+		accepted = nfa.acceptsAll(Stream.iterate(0, i -> i + 1).limit(count).map(Integer::toBinaryString));
+		for (int i = 0; i < count; i++) {
+			assertEquals(nfa.accepts(Integer.toBinaryString(i)), accepted.get(i));
+		}
+		assertTrue(accepted.length() <= count);
+		System.out.println("acceptsAll done");
+	}
+
+	/**
+	 * Test C.10: Matching UTF-8 bytes directly.
+	 * - The NFA accepts any string over 'a', '\u00e9' and '\u20ac' ending in '\u20ac'.
+	 */
+	@Test
+	public void testUtf8() {
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('\u00e9');
+		nfa.addSigma('\u20ac');
+		assertTrue(nfa.addState("s"));
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.addState("f"));
+		assertTrue(nfa.setFinal("f"));
+		assertTrue(nfa.addTransition("s", Set.of("s"), 'a'));
+		assertTrue(nfa.addTransition("s", Set.of("s"), '\u00e9'));
+		assertTrue(nfa.addTransition("s", Set.of("s", "f"), '\u20ac'));
+
+		byte[] bytes = "a\u00e9\u20aca\u20ac".getBytes(StandardCharsets.UTF_8);
+		assertTrue(nfa.acceptsUtf8(bytes));
+		assertFalse(nfa.acceptsUtf8(Arrays.copyOf(bytes, bytes.length - 1)));  // Cut inside the last character
+		assertFalse(nfa.acceptsUtf8(new byte[] {(byte) 0xFF}));  // Not UTF-8
+		assertFalse(nfa.acceptsUtf8("\u20acb".getBytes(StandardCharsets.UTF_8)));  // 'b' is not in sigma
+
+		// A character split across two feeds
+		NFAMatcher matcher = nfa.matcher();
+		matcher.feedUtf8(bytes, 0, 4);
+		matcher.feedUtf8(ByteBuffer.wrap(bytes, 4, bytes.length - 4));
+		assertTrue(matcher.isAccepting());
+
+		// Characters outside the BMP arrive as 4-byte sequences and are
+		// matched as their surrogate pair, as in a String
+		NFA pairs = new NFA();
+		pairs.addSigma('a');
+		assertTrue(pairs.addState("s"));
+		assertTrue(pairs.setStart("s"));
+		assertTrue(pairs.setFinal("s"));
+		assertTrue(pairs.addState("high"));
+		assertTrue(pairs.addTransition("s", Set.of("s"), 'a'));
+		assertTrue(pairs.addTransition("s", Set.of("high"), '\ud800', '\udbff'));
+		assertTrue(pairs.addTransition("high", Set.of("s"), '\udc00', '\udfff'));
+		for (String s : new String[] {"\ud83d\ude00", "a\ud83d\ude00a", "\ud800\udc00\udbff\udfff", "a", "\u00e9"}) {
+			assertEquals(s, pairs.accepts(s), pairs.acceptsUtf8(s.getBytes(StandardCharsets.UTF_8)));
+		}
+		assertTrue(pairs.acceptsUtf8("\ud83d\ude00".getBytes(StandardCharsets.UTF_8)));
+		byte[][] malformed = {
+			{(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},  // Above U+10FFFF
+			{(byte) 0xF0, (byte) 0x80, (byte) 0x80, (byte) 0x80},  // Overlong
+			{(byte) 0xF0, (byte) 0x9F, 'a', (byte) 0x80},  // Broken continuation
+			{(byte) 0xF0, (byte) 0x9F, (byte) 0x98},  // Cut short
+		};
+		for (byte[] b : malformed) {
+			assertFalse(pairs.acceptsUtf8(b));
+		}
+		byte[] emoji = "a\ud83d\ude00".getBytes(StandardCharsets.UTF_8);
+		matcher = pairs.matcher();
+		matcher.feedUtf8(emoji, 0, 3);
+		assertFalse(matcher.isAccepting());
+		matcher.feedUtf8(emoji, 3, emoji.length - 3);
+		assertTrue(matcher.isAccepting());
+		System.out.println("utf8 accepts done");
+	}
+
+	/**
+	 * Test C.11: Character range transitions.
+	 * - The NFA accepts identifiers: a letter or '_' followed by letters, digits or '_',
+	 *   where letters include the Greek small letters.
+	 */
+	@Test
+	public void testRanges() {
+		NFA nfa = new NFA();
+		nfa.addSigma('_');
+		assertTrue(nfa.addState("s"));
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.addState("id"));
+		assertTrue(nfa.setFinal("id"));
+		assertTrue(nfa.addTransition("s", Set.of("id"), '_'));
+		assertTrue(nfa.addTransition("id", Set.of("id"), '_'));
+		for (String from : new String[] {"s", "id"}) {
+			assertTrue(nfa.addTransition(from, Set.of("id"), 'a', 'z'));
+			assertTrue(nfa.addTransition(from, Set.of("id"), 'A', 'Z'));
+			assertTrue(nfa.addTransition(from, Set.of("id"), '\u03b1', '\u03c9'));
+		}
+		assertTrue(nfa.addTransition("id", Set.of("id"), '0', '9'));
+		assertFalse(nfa.addTransition("id", Set.of("id"), 'z', 'a'));
+		assertFalse(nfa.addTransition("id", Set.of("x"), 'a', 'z'));
+
+		assertTrue(nfa.accepts("x"));
+		assertTrue(nfa.accepts("_tmp0"));
+		assertTrue(nfa.accepts("Node42"));
+		assertTrue(nfa.accepts("\u03b1\u03b2\u03b3"));
+		assertTrue(nfa.accepts("e"));
+		assertFalse(nfa.accepts(""));
+		assertFalse(nfa.accepts("4you"));
+		assertFalse(nfa.accepts("a-b"));
+		assertFalse(nfa.accepts("\u0391"));  // Capital alpha is outside the ranges
+
+		// A range that covers 'e' is not an epsilon transition
+		assertEquals(Set.of(nfa.getState("s")), nfa.eClosure(nfa.getState("s")));
+		assertEquals(Set.of(nfa.getState("id")), nfa.getToState(nfa.getState("s"), 'q'));
+		assertNull(nfa.getToState(nfa.getState("s"), '5'));
+		assertTrue(nfa.isDFA());
+
+		// Overlapping ranges, or a range over a symbol of sigma, with different targets
+		NFA overlap = new NFA();
+		overlap.addSigma('a');
+		for (String name : new String[] {"p", "q", "r"}) {
+			assertTrue(overlap.addState(name));
+		}
+		assertTrue(overlap.setStart("p"));
+		assertTrue(overlap.addTransition("p", Set.of("q"), 'x', 'z'));
+		assertTrue(overlap.isDFA());
+		assertTrue(overlap.addTransition("p", Set.of("r"), 'y', 'z'));
+		assertFalse(overlap.isDFA());
+		assertTrue(overlap.addTransition("q", Set.of("q"), 'a'));
+		assertTrue(overlap.addTransition("q", Set.of("r"), '\u0000', 'a'));
+		assertFalse(overlap.isDFA());
+
+		CompiledNFA built = new NFABuilder(2)
+				.sigma('_').start(0).finals(1)
+				.transition(0, '_', 1).transition(1, '_', 1)
+				.transition(0, 'a', 'z', 1).transition(1, 'a', 'z', 1)
+				.transition(0, 'A', 'Z', 1).transition(1, 'A', 'Z', 1)
+				.transition(0, '\u03b1', '\u03c9', 1).transition(1, '\u03b1', '\u03c9', 1)
+				.transition(1, '0', '9', 1)
+				.compile();
+		DFA dfa = nfa.toDFA();
+		for (String s : new String[] {"x", "_tmp0", "Node42", "\u03b1\u03b2\u03b3", "", "4you", "a-b", "\u0391"}) {
+			assertEquals(nfa.accepts(s), built.accepts(s));
+			assertEquals(nfa.accepts(s), dfa.accepts(s));
+			assertEquals(nfa.accepts(s), nfa.acceptsUtf8(s.getBytes(StandardCharsets.UTF_8)));
+		}
+		System.out.println("ranges done");
+	}
+
+	/**
+	 * Test C.12: Alphabet equivalence classes.
+	 * - The NFA accepts a number or a single 'a' or 'b'; the ten digits behave
+	 *   alike, and so do 'a' and 'b'.
+	 */
+	@Test
+	public void testSymbolClasses() {
+		NFA nfa = new NFA();
+		assertTrue(nfa.addState("s"));
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.addState("n"));
+		assertTrue(nfa.setFinal("n"));
+		assertTrue(nfa.addState("x"));
+		assertTrue(nfa.setFinal("x"));
+		for (char c = '0'; c <= '9'; c++) {
+			nfa.addSigma(c);
+			assertTrue(nfa.addTransition("s", Set.of("n"), c));
+			assertTrue(nfa.addTransition("n", Set.of("n"), c));
+		}
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		assertTrue(nfa.addTransition("s", Set.of("x"), 'a'));
+		assertTrue(nfa.addTransition("s", Set.of("x"), 'b'));
+
+		List<Set<Character>> classes = nfa.symbolClasses();
+		assertEquals(2, classes.size());
+		assertEquals(Set.of('0', '1', '2', '3', '4', '5', '6', '7', '8', '9'), classes.get(0));
+		assertEquals(Set.of('a', 'b'), classes.get(1));
+		assertEquals(2, nfa.compile().getColumnCount());
+
+		assertTrue(nfa.accepts("2024"));
+		assertTrue(nfa.accepts("b"));
+		assertFalse(nfa.accepts("ab"));
+		assertFalse(nfa.accepts("7a"));
+		assertFalse(nfa.accepts("c"));
+
+		// A new transition on 'b' splits it from 'a'
+		assertTrue(nfa.addTransition("x", Set.of("x"), 'b'));
+		assertEquals(3, nfa.symbolClasses().size());
+		assertTrue(nfa.accepts("bbb"));
+		assertTrue(nfa.accepts("abb"));
+		assertFalse(nfa.accepts("ba"));
+		System.out.println("symbolClasses done");
+	}
+
+	/**
+	 * Test C.13: Removing epsilon transitions.
+	 * - The NFA accepts (a*b)+ using epsilon transitions between its parts.
+	 */
+	@Test
+	public void testRemoveEpsilons() {
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		for (String name : new String[] {"0", "1", "2", "3"}) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("0"));
+		assertTrue(nfa.setFinal("3"));
+		assertTrue(nfa.addTransition("0", Set.of("1"), 'e'));
+		assertTrue(nfa.addTransition("1", Set.of("1"), 'a'));
+		assertTrue(nfa.addTransition("1", Set.of("2"), 'e'));
+		assertTrue(nfa.addTransition("2", Set.of("3"), 'b'));
+		assertTrue(nfa.addTransition("3", Set.of("0"), 'e'));
+
+		NFA free = nfa.removeEpsilons();
+		for (String name : new String[] {"0", "1", "2", "3"}) {
+			assertEquals(Set.of(free.getState(name)), free.eClosure(free.getState(name)));
+		}
+		assertTrue(free.isStart("0"));
+		assertTrue(free.isFinal("3"));
+		assertFalse(free.isFinal("2"));
+		assertEquals(Set.of(free.getState("1")), free.getToState(free.getState("0"), 'a'));
+		assertEquals(Set.of(free.getState("3")), free.getToState(free.getState("0"), 'b'));
+
+		for (String s : new String[] {"", "b", "ab", "aab", "bab", "abb", "a", "ba", "c", "e", "be", "ebe"}) {
+			assertEquals(nfa.accepts(s), free.accepts(s));
+		}
+		assertTrue(free.accepts("aabab"));
+		assertFalse(free.accepts("aaba"));
+
+		// The source NFA is left unchanged
+		assertEquals(Set.of(nfa.getState("0"), nfa.getState("1"), nfa.getState("2")), nfa.eClosure(nfa.getState("0")));
+		System.out.println("removeEpsilons done");
+	}
+
+	/**
+	 * Test C.14: Pruning unreachable and dead states.
+	 * - The NFA accepts a+b; "u" cannot be reached, "d" cannot reach the final
+	 *   state, and "x" is only reachable from "u".
+	 */
+	@Test
+	public void testPrune() {
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		for (String name : new String[] {"s", "m", "f", "d", "u", "x"}) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.setFinal("f"));
+		assertTrue(nfa.setFinal("x"));
+		assertTrue(nfa.addTransition("s", Set.of("m", "d"), 'a'));
+		assertTrue(nfa.addTransition("m", Set.of("m"), 'a'));
+		assertTrue(nfa.addTransition("m", Set.of("f"), 'b'));
+		assertTrue(nfa.addTransition("m", Set.of("d"), 'e'));
+		assertTrue(nfa.addTransition("d", Set.of("d"), 'b'));
+		assertTrue(nfa.addTransition("u", Set.of("x", "s"), 'a'));
+		assertEquals(2, nfa.maxCopies("aa"));
+
+		assertEquals(3, nfa.prune());
+		assertNull(nfa.getState("d"));
+		assertNull(nfa.getState("u"));
+		assertNull(nfa.getState("x"));
+		assertEquals(3, nfa.compile().getStateCount());
+		assertEquals(Set.of(nfa.getState("m")), nfa.getToState(nfa.getState("s"), 'a'));
+		assertNull(nfa.getToState(nfa.getState("m"), 'e'));
+		assertEquals(1, nfa.maxCopies("aa"));
+
+		assertTrue(nfa.accepts("ab"));
+		assertTrue(nfa.accepts("aaab"));
+		assertFalse(nfa.accepts("abb"));
+		assertFalse(nfa.accepts("b"));
+		assertEquals(0, nfa.prune());
+
+		// A start state that cannot reach a final state is kept
+		NFA empty = new NFA();
+		empty.addSigma('a');
+		assertTrue(empty.addState("s"));
+		assertTrue(empty.setStart("s"));
+		assertTrue(empty.addState("t"));
+		assertTrue(empty.addTransition("s", Set.of("t"), 'a'));
+		assertEquals(1, empty.prune());
+		assertTrue(empty.isStart("s"));
+		assertFalse(empty.accepts("a"));
+		System.out.println("prune done");
+	}
+
+	/**
+	 * Test C.15: Observing the simulation step by step.
+	 * - The NFA accepts strings over {a, b} ending in "ab", with an epsilon
+	 *   transition from the start state to a copy of it.
+	 */
+	@Test
+	public void testObserver() {
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		for (String name : new String[] {"s", "t", "m", "f"}) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.setFinal("f"));
+		assertTrue(nfa.addTransition("s", Set.of("t"), 'e'));
+		assertTrue(nfa.addTransition("t", Set.of("s"), 'a'));
+		assertTrue(nfa.addTransition("t", Set.of("s"), 'b'));
+		assertTrue(nfa.addTransition("t", Set.of("m"), 'a'));
+		assertTrue(nfa.addTransition("m", Set.of("f"), 'b'));
+
+		List<String> steps = new ArrayList<>();
+		assertTrue(nfa.accepts("bab", (step, symbol, active, work) ->
+				steps.add(step + ":" + (step == 0 ? "-" : String.valueOf(symbol)) + ":" + active + ":" + work)));
+		assertEquals(Arrays.asList("0:-:2:1", "1:b:2:1", "2:a:3:1", "3:b:3:1"), steps);
+		assertEquals(3, nfa.maxCopies("bab"));
+		assertEquals(2, nfa.maxCopies(""));
+
+		// A character outside sigma empties the active set
+		steps.clear();
+		assertFalse(nfa.accepts("ac", (step, symbol, active, work) -> steps.add(step + ":" + active)));
+		assertEquals(Arrays.asList("0:2", "1:3", "2:0"), steps);
+
+		// A matcher reports UTF-8 input one character at a time
+		StringBuilder seen = new StringBuilder();
+		NFAMatcher matcher = nfa.matcher().observe((step, symbol, active, work) -> {
+			if (step > 0) {
+				seen.append(symbol);
+			}
+		});
+		matcher.feedUtf8("a\u00e9b".getBytes(StandardCharsets.UTF_8), 0, 4);
+		assertFalse(matcher.isAccepting());
+		assertEquals("a\u00e9b", seen.toString());
+		System.out.println("observer done");
+	}
+
+	/**
+	 * Test C.16: Early accept and early reject.
+	 * - The NFA accepts strings over {a, b} containing "ab"; once "ab" has been
+	 *   read every continuation over {a, b} is accepted. Extra unreachable
+	 *   states push the NFA past the bit-parallel limit.
+	 */
+	@Test
+	public void testEarlyExit() {
+		for (int padding : new int[] {0, 70}) {
+			NFA nfa = new NFA();
+			nfa.addSigma('a');
+			nfa.addSigma('b');
+			for (String name : new String[] {"s", "m", "f"}) {
+				assertTrue(nfa.addState(name));
+			}
+			for (int i = 0; i < padding; i++) {
+				assertTrue(nfa.addState("p" + i));
+			}
+			assertTrue(nfa.setStart("s"));
+			assertTrue(nfa.setFinal("f"));
+			assertTrue(nfa.addTransition("s", Set.of("s"), 'a'));
+			assertTrue(nfa.addTransition("s", Set.of("s"), 'b'));
+			assertTrue(nfa.addTransition("s", Set.of("m"), 'a'));
+			assertTrue(nfa.addTransition("m", Set.of("f"), 'b'));
+			assertTrue(nfa.addTransition("f", Set.of("f"), 'a'));
+			assertTrue(nfa.addTransition("f", Set.of("f"), 'b'));
+
+			StringBuilder tail = new StringBuilder();
+			for (int i = 0; i < 10000; i++) {
+				tail.append(i % 3 == 0 ? 'a' : 'b');
+			}
+			LazyDFA lazy = nfa.lazyDFA(8);
+			for (String s : new String[] {"ab" + tail, "bab" + tail, "ab" + tail + "c", "ba", "c" + tail, ""}) {
+				boolean expected = s.contains("ab") && !s.contains("c");
+				assertEquals(expected, nfa.accepts(s));
+				assertEquals(expected, lazy.accepts(s));
+				NFAMatcher matcher = nfa.matcher();
+				matcher.feed(s);
+				assertEquals(expected, matcher.isAccepting());
+			}
+
+			// An observed run still sees every step
+			int[] steps = {0};
+			assertTrue(nfa.accepts("ab" + tail, (step, symbol, active, work) -> steps[0]++));
+			assertEquals(10003, steps[0]);
+
+			// Once rejected, a matcher stays rejecting
+			NFAMatcher matcher = nfa.matcher();
+			matcher.feed("c");
+			assertEquals(0, matcher.getActiveStateCount());
+			matcher.feed("ab");
+			assertFalse(matcher.isAccepting());
+		}
+
+		// A long chain of final states whose last state loops is universal
+		// from every state, and one without the loop from none of them
+		for (boolean loop : new boolean[] {true, false}) {
+			int n = 50000;
+			NFABuilder builder = new NFABuilder(n).sigma('a').start(0);
+			for (int i = 0; i < n; i++) {
+				builder.finals(i);
+				if (i + 1 < n) {
+					builder.transition(i, 'a', i + 1);
+				}
+			}
+			if (loop) {
+				builder.transition(n - 1, 'a', n - 1);
+			}
+			NFAMatcher matcher = builder.compile().matcher();
+			matcher.feed("a".repeat(n + 10));
+			assertEquals(loop, matcher.isAccepting());
+			assertEquals(loop ? 1 : 0, matcher.getActiveStateCount());
+		}
+		System.out.println("early exit done");
+	}
+
+	/**
+	 * Test C.17: Searching for accepted spans.
+	 * - The first NFA accepts "abc" or "b", the second accepts a*.
+	 */
+	@Test
+	public void testFind() {
+		NFA nfa = new NFA();
+		for (char c : new char[] {'a', 'b', 'c', 'x'}) {
+			nfa.addSigma(c);
+		}
+		for (String name : new String[] {"s", "1", "2", "f"}) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.setFinal("f"));
+		assertTrue(nfa.addTransition("s", Set.of("1"), 'a'));
+		assertTrue(nfa.addTransition("1", Set.of("2"), 'b'));
+		assertTrue(nfa.addTransition("2", Set.of("f"), 'c'));
+		assertTrue(nfa.addTransition("s", Set.of("f"), 'b'));
+
+		// "abc" starts further left than its inner "b"
+		assertEquals("[1, 4)", nfa.find("xabcx", 0).toString());
+		assertEquals("[2, 3)", nfa.find("xabcx", 2).toString());
+		assertEquals("[2, 3)", nfa.find("xabx", 0).toString());
+		assertNull(nfa.find("xacx", 0));
+		assertNull(nfa.find("abc", 4));
+		assertEquals(Arrays.asList("[0, 3)", "[4, 5)", "[7, 10)"),
+				nfa.findAll("abcxbyzabc").stream().map(Object::toString).collect(Collectors.toList()));
+		Match match = nfa.find("zzb", 0);
+		assertEquals(2, match.getStart());
+		assertEquals(3, match.getEnd());
+
+		NFA stars = new NFA();
+		stars.addSigma('a');
+		assertTrue(stars.addState("s"));
+		assertTrue(stars.setStart("s"));
+		assertTrue(stars.setFinal("s"));
+		assertTrue(stars.addTransition("s", Set.of("s"), 'a'));
+		assertEquals("[0, 0)", stars.find("baaa", 0).toString());
+		assertEquals(Arrays.asList("[0, 0)", "[1, 4)", "[4, 4)"),
+				stars.findAll("baaa").stream().map(Object::toString).collect(Collectors.toList()));
+		System.out.println("find done");
+	}
+
+	/**
+	 * Test C.18: Matching several patterns at once.
+	 * - Pattern 0 accepts strings ending in 'a', pattern 1 accepts "ab",
+	 *   and pattern 2 accepts any string over {e} that follows its epsilon edge.
+	 */
+	@Test
+	public void testPatternSet() {
+		NFA endsInA = new NFA();
+		endsInA.addSigma('a');
+		endsInA.addSigma('b');
+		assertTrue(endsInA.addState("s"));
+		assertTrue(endsInA.addState("f"));
+		assertTrue(endsInA.setStart("s"));
+		assertTrue(endsInA.setFinal("f"));
+		assertTrue(endsInA.addTransition("s", Set.of("s", "f"), 'a'));
+		assertTrue(endsInA.addTransition("s", Set.of("s"), 'b'));
+
+		NFA ab = new NFA();
+		ab.addSigma('a');
+		ab.addSigma('b');
+		for (String name : new String[] {"s", "1", "f"}) {
+			assertTrue(ab.addState(name));
+		}
+		assertTrue(ab.setStart("s"));
+		assertTrue(ab.setFinal("f"));
+		assertTrue(ab.addTransition("s", Set.of("1"), 'a'));
+		assertTrue(ab.addTransition("1", Set.of("f"), 'b'));
+
+		NFA eps = new NFA();
+		eps.addSigma('e');
+		assertTrue(eps.addState("s"));
+		assertTrue(eps.addState("f"));
+		assertTrue(eps.setStart("s"));
+		assertTrue(eps.setFinal("f"));
+		assertTrue(eps.addTransition("s", Set.of("f"), 'e'));
+
+		PatternSet patterns = new PatternSet();
+		assertEquals(0, patterns.add(endsInA));
+		assertEquals(1, patterns.add(ab));
+		assertEquals(BitSet.valueOf(new long[] {0b01}), patterns.matches("ba"));
+		assertEquals(BitSet.valueOf(new long[] {0b10}), patterns.matches("ab"));
+		assertTrue(patterns.matches("").isEmpty());
+		assertTrue(patterns.matches("abc").isEmpty());
+
+		// Adding a pattern later rebuilds the union
+		assertEquals(2, patterns.add(eps));
+		assertEquals(3, patterns.getPatternCount());
+		assertEquals(BitSet.valueOf(new long[] {0b100}), patterns.matches(""));
+		assertEquals(BitSet.valueOf(new long[] {0b100}), patterns.matches("e"));
+		assertTrue(patterns.matches("ee").isEmpty());
+		assertEquals(BitSet.valueOf(new long[] {0b01}), patterns.matches("aa"));
+		for (String s : new String[] {"", "a", "ab", "aba", "e", "ee", "bae"}) {
+			BitSet expected = new BitSet();
+			expected.set(0, endsInA.accepts(s));
+			expected.set(1, ab.accepts(s));
+			expected.set(2, eps.accepts(s));
+			assertEquals(s, expected, patterns.matches(s));
+		}
+		System.out.println("patternSet done");
+	}
+
+	/**
+	 * Test C.19: Language inclusion and equivalence.
+	 * - The first NFA accepts a(b|c)*, the second accepts (a|b|c)*, and the
+	 *   third accepts a(b|c)* with other states and range transitions.
+	 */
+	@Test
+	public void testInclusion() {
+		NFA abc = new NFA();
+		for (char c : new char[] {'a', 'b', 'c'}) {
+			abc.addSigma(c);
+		}
+		assertTrue(abc.addState("s"));
+		assertTrue(abc.addState("f"));
+		assertTrue(abc.setStart("s"));
+		assertTrue(abc.setFinal("f"));
+		assertTrue(abc.addTransition("s", Set.of("f"), 'a'));
+		assertTrue(abc.addTransition("f", Set.of("f"), 'b'));
+		assertTrue(abc.addTransition("f", Set.of("f"), 'c'));
+
+		NFA all = new NFA();
+		for (char c : new char[] {'a', 'b', 'c'}) {
+			all.addSigma(c);
+		}
+		assertTrue(all.addState("s"));
+		assertTrue(all.setStart("s"));
+		assertTrue(all.setFinal("s"));
+		assertTrue(all.addTransition("s", Set.of("s"), 'a', 'c'));
+
+		NFA ranged = new NFA();
+		ranged.addSigma('a');
+		for (String name : new String[] {"s", "1", "f"}) {
+			assertTrue(ranged.addState(name));
+		}
+		assertTrue(ranged.setStart("s"));
+		assertTrue(ranged.setFinal("f"));
+		assertTrue(ranged.addTransition("s", Set.of("1", "f"), 'a'));
+		assertTrue(ranged.addTransition("1", Set.of("f"), 'b', 'c'));
+		assertTrue(ranged.addTransition("f", Set.of("f"), 'b', 'c'));
+
+		assertTrue(abc.isSubsetOf(all));
+		assertFalse(all.isSubsetOf(abc));
+		assertFalse(abc.isEquivalentTo(all));
+		assertTrue(abc.isEquivalentTo(ranged));
+		assertTrue(ranged.isSubsetOf(all));
+
+		// The input 'e' follows epsilon transitions, as in accepts
+		assertTrue(abc.addTransition("s", Set.of("f"), 'e'));
+		assertTrue(abc.accepts("e"));
+		assertFalse(abc.isSubsetOf(ranged));
+		assertTrue(abc.isEquivalentTo(abc.removeEpsilons()));
+		assertTrue(ranged.isSubsetOf(abc));
+
+		// A character outside the other alphabet escapes it
+		assertTrue(ranged.addTransition("f", Set.of("f"), 'x', 'x'));
+		assertFalse(ranged.isSubsetOf(all));
+		assertTrue(all.addTransition("s", Set.of("s"), 'e', 'z'));
+		assertTrue(ranged.isSubsetOf(all));
+
+		// The empty language is contained in everything
+		NFA empty = new NFA();
+		empty.addSigma('a');
+		assertTrue(empty.addState("s"));
+		assertTrue(empty.setStart("s"));
+		assertTrue(empty.isSubsetOf(abc));
+		assertFalse(abc.isSubsetOf(empty));
+		System.out.println("inclusion done");
+	}
+
+	/**
+	 * Test C.20: A thread that simulated a compiled NFA does not keep it alive.
+	 */
+	@Test
+	public void testNoThreadRetention() {
+		NFABuilder builder = new NFABuilder(100).sigma('1').start(0).finals(99);
+		for (int i = 0; i < 99; i++) {
+			builder.transition(i, '1', i + 1);
+		}
+		CompiledNFA chain = builder.compile();
+		assertTrue(chain.accepts("1".repeat(99)));
+		assertTrue(chain.acceptsUtf8("1".repeat(99).getBytes(StandardCharsets.UTF_8)));
+		WeakReference<CompiledNFA> ref = new WeakReference<>(chain);
+		chain = null;
+		for (int i = 0; i < 50 && ref.get() != null; i++) {
+			System.gc();
+		}
+		assertNull(ref.get());
+
+		// The scratch space is shared with larger and smaller NFAs on the same thread
+		CompiledNFA small = new NFABuilder(70).sigma('1').start(0).finals(0).compile();
+		assertTrue(small.accepts(""));
+		assertFalse(small.accepts("1"));
+		System.out.println("thread retention done");
+	}
+
+	/**
+	 * Test C.21: Corrupt mapped files are rejected with an IOException.
+	 * - Each case changes one int of a saved nfa3 or cuts the file short.
+	 */
+	@Test
+	public void testMappedCorrupt() throws IOException {
+		Path file = Files.createTempFile("nfa3", ".nfa");
+		try {
+			nfa3().compile().save(file);
+			byte[] saved = Files.readAllBytes(file);
+			ByteBuffer header = ByteBuffer.wrap(saved).order(ByteOrder.LITTLE_ENDIAN);
+			int states = header.getInt(8);
+			int ranges = header.getInt(20);
+			int deltaIndex = 8 + 3 * ranges;
+			int deltaTargets = deltaIndex + states * header.getInt(16) + 1;
+			int[][] cases = {
+				{2, -1}, {2, 1 << 20}, {3, states}, {3, -2}, {4, Integer.MAX_VALUE}, {5, -1}, {5, 1 << 30},
+				{6, -5}, {7, Integer.MIN_VALUE}, {8, 0x10000}, {9, -1}, {10, 1 << 20},
+				{deltaIndex, 1}, {deltaIndex + 1, -1}, {deltaTargets, states}, {deltaTargets, -1},
+			};
+			for (int[] c : cases) {
+				ByteBuffer corrupt = ByteBuffer.wrap(saved.clone()).order(ByteOrder.LITTLE_ENDIAN);
+				corrupt.putInt(4 * c[0], c[1]);
+				Files.write(file, corrupt.array());
+				try {
+					MappedNFA.open(file);
+					fail("expected an IOException for int " + c[0] + " = " + c[1]);
+				} catch (IOException e) {
+					// expected
+				}
+			}
+			Files.write(file, Arrays.copyOf(saved, saved.length - 4));
+			try {
+				MappedNFA.open(file);
+				fail("expected an IOException for a truncated file");
+			} catch (IOException e) {
+				// expected
+			}
+
+			// The original still opens and shares scratch space with other automata
+			Files.write(file, saved);
+			MappedNFA mapped = MappedNFA.open(file);
+			assertTrue(mapped.accepts("111#00"));
+			NFABuilder builder = new NFABuilder(100).sigma('1').start(0).finals(99);
+			for (int i = 0; i < 99; i++) {
+				builder.transition(i, '1', i + 1);
+			}
+			assertTrue(builder.compile().accepts("1".repeat(99)));
+			assertFalse(mapped.accepts("#01000###"));
+			assertTrue(mapped.accepts("01#11##"));
+		} finally {
+			Files.delete(file);
+		}
+		System.out.println("mapped corrupt done");
+	}
 }
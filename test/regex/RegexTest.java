@@ -0,0 +1,159 @@
+package test.regex;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import fa.nfa.CompiledNFA;
+import fa.nfa.NFA;
+import fa.regex.Regex;
+
+public class RegexTest {
+
+	/**
+	 * Helper method that checks a pattern against a list of inputs, through
+	 * both the ordinary NFA and the compiled form.
+	 */
+	private void check(String pattern, String[] accepted, String[] rejected) {
+		Regex regex = Regex.parse(pattern);
+		NFA nfa = regex.toNFA();
+		CompiledNFA compiled = regex.compile();
+		for (String s : accepted) {
+			assertTrue(pattern + " should accept " + s, nfa.accepts(s));
+			assertTrue(pattern + " should accept " + s, compiled.accepts(s));
+		}
+		for (String s : rejected) {
+			assertFalse(pattern + " should reject " + s, nfa.accepts(s));
+			assertFalse(pattern + " should reject " + s, compiled.accepts(s));
+		}
+	}
+
+	/**
+	 * Test R.1: Concatenation, alternation and repetition.
+	 */
+	@Test
+	public void testOperators() {
+		check("abc", new String[] {"abc"}, new String[] {"", "ab", "abcc", "abd"});
+		check("ab|cd|", new String[] {"ab", "cd", ""}, new String[] {"a", "abcd"});
+		check("a*", new String[] {"", "a", "aaaa"}, new String[] {"b", "ab"});
+		check("(ab)+c?", new String[] {"ab", "abab", "abc", "ababc"}, new String[] {"", "c", "abcab", "aba"});
+		check("a(b|c)*d", new String[] {"ad", "abd", "acbcbd"}, new String[] {"a", "abc", "bd"});
+		check("(a*)*b", new String[] {"b", "aab"}, new String[] {"", "aa", "ba"});
+		check("x(a*b)?y", new String[] {"xy", "xby", "xaaby"}, new String[] {"xay", "xaby y", "xabbyy"});
+		check("()", new String[] {""}, new String[] {"a"});
+		System.out.println("operators done");
+	}
+
+	/**
+	 * Test R.2: Character classes, the wildcard and escapes.
+	 */
+	@Test
+	public void testClasses() {
+		check("[a-c]x", new String[] {"ax", "bx", "cx"}, new String[] {"dx", "x"});
+		check("[^0-9]+", new String[] {"ab", "\u20ac"}, new String[] {"", "a1"});
+		check("[]a-]", new String[] {"]", "a", "-"}, new String[] {"b"});
+		check("\\d+\\.\\d*", new String[] {"3.", "31.41"}, new String[] {".5", "3"});
+		check("\\w\\s\\w", new String[] {"a b", "_\t9"}, new String[] {"ab", "a-b"});
+		check("[\\d_]", new String[] {"7", "_"}, new String[] {"a"});
+		check(".*\\*", new String[] {"*", "a\n*"}, new String[] {"", "*a"});
+		System.out.println("classes done");
+	}
+
+	/**
+	 * Test R.3: The character 'e' is never mistaken for an epsilon
+	 * transition, whether or not the pattern can match it.
+	 */
+	@Test
+	public void testLiteralE() {
+		check("e", new String[] {"e"}, new String[] {""});
+		check("(ab)*e", new String[] {"e", "abe"}, new String[] {"ab", "aeb", "ae"});
+		check("h[a-f]l+o|a*", new String[] {"hello", "halo", "", "aa"}, new String[] {"aea", "e", "hllo"});
+		check("[^x]*", new String[] {"e", "eee"}, new String[] {"x"});
+
+		// Patterns that cannot match 'e' reject it
+		check("a*", new String[] {"", "aa"}, new String[] {"e", "aea", "ae"});
+		check("x?y", new String[] {"y", "xy"}, new String[] {"ey", "xey"});
+		check("[0-9]+", new String[] {"1", "12"}, new String[] {"1e2", "e"});
+		check("(a|b)*c[0-9]+", new String[] {"c1", "abc12"}, new String[] {"ec1", "aebc1", "c1e"});
+		System.out.println("literal e done");
+	}
+
+	/**
+	 * Test R.4: The emitted NFA has no epsilon transitions, and one state
+	 * per character set plus the start state.
+	 */
+	@Test
+	public void testThompsonShape() {
+		NFA nfa = Regex.parse("abcd").toNFA();
+		assertEquals(5, nfa.compile().getStateCount());
+		assertFalse(nfa.getSigma().contains('e'));
+
+		nfa = Regex.parse("(a|b)*c").toNFA();
+		assertEquals(4, nfa.compile().getStateCount());
+		assertFalse(nfa.getSigma().contains('e'));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(1, nfa.eClosure(nfa.getState("q" + i)).size());
+		}
+		System.out.println("thompson shape done");
+	}
+
+	/**
+	 * Test R.5: Malformed patterns are rejected with the position of the problem.
+	 */
+	@Test
+	public void testErrors() {
+		String[][] cases = {
+			{"(ab", "missing ')' at index 3"},
+			{"ab)", "unmatched ')' at index 2"},
+			{"*a", "nothing to repeat before '*' at index 0"},
+			{"a|+", "nothing to repeat before '+' at index 2"},
+			{"[ab", "missing ']' at index 3"},
+			{"[z-a]", "empty range z-a at index 4"},
+			{"a\\", "trailing '\\' at index 2"},
+			{"\\q", "unknown escape '\\q' at index 1"},
+		};
+		for (String[] c : cases) {
+			try {
+				Regex.parse(c[0]);
+				fail("expected an error for " + c[0]);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith(c[1]));
+			}
+		}
+		System.out.println("errors done");
+	}
+
+	/**
+	 * Test R.6: The position automaton has one state per character set plus
+	 * a start state, no epsilon transitions, and the same language as the
+	 * Thompson construction.
+	 */
+	@Test
+	public void testGlushkov() {
+		String[] patterns = {"", "abc", "(a|b)*c", "(ab)+c?", "x(a*b)?y", "h[a-f]l+o|a*", "[^x]*e", "(a*)*b"};
+		String[] inputs = {"", "a", "b", "c", "e", "ab", "abc", "ababc", "xy", "xaaby", "hello", "aea", "ee", "aab"};
+		for (String pattern : patterns) {
+			Regex regex = Regex.parse(pattern);
+			NFA thompson = regex.toNFA();
+			NFA glushkov = regex.glushkov().build();
+			CompiledNFA compiled = regex.glushkov().compile();
+			for (String s : inputs) {
+				assertEquals(pattern + " on " + s, thompson.accepts(s), glushkov.accepts(s));
+				assertEquals(pattern + " on " + s, thompson.accepts(s), compiled.accepts(s));
+			}
+			for (int i = 0; i < compiled.getStateCount(); i++) {
+				assertEquals(1, glushkov.eClosure(glushkov.getState("q" + i)).size());
+			}
+		}
+
+		// Three positions: a, b and c
+		CompiledNFA compiled = Regex.parse("(a|b)*c").glushkov().compile();
+		assertEquals(4, compiled.getStateCount());
+		assertNotNull(compiled.bitParallel());
+		NFA nfa = Regex.parse("(a|b)*c").glushkov().build();
+		assertFalse(nfa.getSigma().contains('e'));
+		assertTrue(nfa.accepts("abbac"));
+		assertFalse(nfa.accepts("abca"));
+		System.out.println("glushkov done");
+	}
+}